@@ -18,7 +18,7 @@ class Breadboard extends CircuitComponent
     static final int WIDTH = 1052;
     static final int HEIGHT = 379;
     
-    private HoleState holeStates[];
+    private HoleStateVector holeStates;
     
     private int highlightedHoleID;
     private boolean holeStatusVisible;
@@ -31,8 +31,7 @@ class Breadboard extends CircuitComponent
     Breadboard(Location pos)
     {
         super(ComponentType.BREADBOARD,getNewName(),pos,WIDTH,HEIGHT,MAX_HOLES);
-        holeStates = new HoleState[MAX_HOLES];
-        for(int i=0; i<MAX_HOLES; i++) holeStates[i]=HoleState.NO_CONNECTION;
+        holeStates = new HoleStateVector(MAX_HOLES);
         highlightedHoleID=-1;
     }
     
@@ -89,15 +88,21 @@ class Breadboard extends CircuitComponent
     
     public HoleState getHoleState(int holeID)
     {
-        return(holeStates[holeID-1]);
+        return(holeStates.get(holeID-1));
     }
         
     public void setHoleStates(HoleState states[])
+    {
+        holeStates=HoleStateVector.fromArray(states);
+    }
+    
+    public void setHoleStates(HoleStateVector states)
     {
         holeStates=states;
     }
     
-    public HoleState[] getHoleStates() { return holeStates; }
+    public HoleState[] getHoleStates() { return holeStates.toArray(); }         // unpacked copy
+    public HoleStateVector getHoleStateVector() { return holeStates; }
     
     @Override
     public boolean isHoleBlocked(int holeID, ArrayList<Wire> wires, ArrayList<CircuitComponent> components)
@@ -309,9 +314,10 @@ class Breadboard extends CircuitComponent
         
         if(isLocked())
         {
-            if(holeStatusVisible && holeStates[holeIDCounter]!=HoleState.NO_CONNECTION)
+            HoleState hs = holeStates.get(holeIDCounter);
+            if(holeStatusVisible && hs!=HoleState.NO_CONNECTION)
             {
-                g.setColor(holeStates[holeIDCounter]==HoleState.HIGH ? Color.RED : Color.BLUE);
+                g.setColor(hs==HoleState.HIGH ? Color.RED : Color.BLUE);
                 g.drawOval(x-7, y-7, 14, 14);
             }
             
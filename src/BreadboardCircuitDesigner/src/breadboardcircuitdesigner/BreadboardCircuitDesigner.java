@@ -11,6 +11,19 @@ public class BreadboardCircuitDesigner
 {
     public static void main(String args[]) 
     {
+        if(args.length>0 && args[0].equals("--headless"))
+        {
+            // simulate without the GUI (see HeadlessSimulator)
+            System.setProperty("java.awt.headless","true");
+            System.exit(HeadlessSimulator.run(args));
+        }
+        if(args.length>0 && args[0].equals("--fuzz"))
+        {
+            // random stimulus on all the cores (see FuzzRunner)
+            System.setProperty("java.awt.headless","true");
+            System.exit(FuzzRunner.run(args));
+        }
+        
         //<editor-fold>
         try {
             for (javax.swing.UIManager.LookAndFeelInfo info : javax.swing.UIManager.getInstalledLookAndFeels()) {
@@ -18,7 +18,7 @@ class BreadboardUtility
     public static final int ROW_SIZE = 25;
     public static final int COLUMN_SIZE = 5;
     
-    private static int colIDs[]=null;
+    private static volatile int colIDs[]=null;
     
     public static boolean isHoleInPowerRails(int holeID)
     {
@@ -80,21 +80,24 @@ class BreadboardUtility
     public static int getColumnIDFromHoleID(int holeID) 
     {
         if(isHoleInRow(holeID)) return -1;
-        if(colIDs==null)
+        int ids[] = colIDs;
+        if(ids==null)
         {
-            colIDs = new int[Breadboard.MAX_HOLES];
+            // filled before it is published, as simulation engines may call this from several threads
+            ids = new int[Breadboard.MAX_HOLES];
             
             for(int r=1; r<=10; r++)
             {
                 for(int c=1; c<=63; c++)
                 {
                     int hid = 200+(((r-1)*63) + c);
-                    colIDs[hid-1]=(r<=5 ? 0 : 63) + c;
+                    ids[hid-1]=(r<=5 ? 0 : 63) + c;
                 }
             }
+            colIDs = ids;
         }
         
-        return colIDs[holeID-1];                            // col-ID = 1 to 63 (for top-columns) and 64 to 126 (for bottom-columns)
+        return ids[holeID-1];                               // col-ID = 1 to 63 (for top-columns) and 64 to 126 (for bottom-columns)
     }
     
     public static int[] getHolesInRow(int rowID)
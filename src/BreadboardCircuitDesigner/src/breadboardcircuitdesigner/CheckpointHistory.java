@@ -0,0 +1,180 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+class CheckpointHistory
+{
+    /*
+            CHECKPOINT HISTORY
+            ------------------------------------------------
+            A bounded history of the state of a circuit, taken every 'interval' cycles (see
+            SimulationEngine.rewind). A state is an array of longs packed by the engine (clock edges and
+            levels, hole states, net states, IC storage): from one cycle to the next, most of its bits stay
+            the same, so a checkpoint only keeps its XOR with the previous one, as (index, XOR) pairs of the
+            words which changed. Every KEYFRAME_INTERVAL-th checkpoint is a keyframe, which keeps the whole
+            state:
+
+            restore     --->    copy the last keyframe before the checkpoint, then XOR the deltas up to it:
+                                at most KEYFRAME_INTERVAL passes over the state
+
+            When the history is full, the oldest keyframe is dropped along with its deltas, so the history
+            always starts with a keyframe. A state of another length (a recompiled circuit) starts afresh.
+
+            Every slot of the ring keeps its buffer for the checkpoints which take the slot later, and the
+            buffer only grows (doubling) when a checkpoint does not fit. So once the sizes of the deltas have
+            been seen, taking a checkpoint allocates nothing.
+    */
+
+    public static final int KEYFRAME_INTERVAL = 16;
+
+    private final int interval;
+    private final int capacity;                 // a multiple of KEYFRAME_INTERVAL
+
+    // ---------- checkpoints (circular, oldest first) ----------
+    private final long cycles[];
+    private final long data[][];                // the whole state (keyframe), or the (index, XOR) pairs
+    private final int sizes[];                  // longs of data[] in use
+    private final boolean keyframe[];
+    private int first, count;
+    // ----------------------------------------------------------
+
+    private long previous[] = new long[0];      // the state of the last checkpoint
+    private int stateLength = -1;
+    private int sinceKeyframe;
+
+    CheckpointHistory(int cycleInterval, int maxCheckpoints)
+    {
+        interval = cycleInterval;
+        capacity = Math.max(2,(maxCheckpoints+KEYFRAME_INTERVAL-1)/KEYFRAME_INTERVAL) * KEYFRAME_INTERVAL;
+        cycles = new long[capacity];
+        data = new long[capacity][];
+        sizes = new int[capacity];
+        keyframe = new boolean[capacity];
+    }
+
+    public int getCount() { return count; }
+    public int getStateLength() { return stateLength; }
+    public long getFirstCycle() { return(count==0 ? -1 : cycles[first]); }
+    public long getLastCycle() { return(count==0 ? -1 : cycles[(first+count-1)%capacity]); }
+
+    public void clear()
+    {
+        first = 0;
+        count = 0;
+        stateLength = -1;
+    }
+
+    public boolean isDue(long cycle)
+    {
+        return(cycle%interval==0 && cycle>getLastCycle());
+    }
+
+    public void add(long cycle, long state[], int length)
+    {
+        if(length!=stateLength)
+        {
+            clear();
+            stateLength = length;
+            previous = new long[length];
+        }
+        if(count==capacity) dropOldestKeyframe();
+
+        int slot = (first+count)%capacity;
+        boolean key = (count==0 || sinceKeyframe==KEYFRAME_INTERVAL-1);
+        if(key)
+        {
+            System.arraycopy(state,0,buffer(slot,length),0,length);
+            sizes[slot] = length;
+            sinceKeyframe = 0;
+        } else {
+            int changed=0;
+            for(int i=0; i<length; i++)
+            {
+                if(state[i]!=previous[i]) changed++;
+            }
+
+            long d[] = buffer(slot,2*changed);
+            for(int i=0, k=0; i<length; i++)
+            {
+                if(state[i]==previous[i]) continue;
+                d[k++] = i;
+                d[k++] = state[i]^previous[i];
+            }
+            sizes[slot] = 2*changed;
+            sinceKeyframe++;
+        }
+
+        cycles[slot] = cycle;
+        keyframe[slot] = key;
+        count++;
+        System.arraycopy(state,0,previous,0,length);
+    }
+
+    private long[] buffer(int slot, int size)
+    {
+        long b[] = data[slot];
+        if(b==null || b.length<size)
+        {
+            b = new long[Math.max(size,(b==null ? 0 : 2*b.length))];
+            data[slot] = b;
+        }
+        return b;
+    }
+
+    private void dropOldestKeyframe()
+    {
+        do
+        {
+            first = (first+1)%capacity;
+            count--;
+        } while(count>0 && !keyframe[first]);
+    }
+
+    public long find(long cycle)
+    {
+        // The cycle of the last checkpoint at or before 'cycle', -1 if there is none
+        int lo=0, hi=count-1, found=-1;
+        while(lo<=hi)
+        {
+            int mid = (lo+hi)>>>1;
+            if(cycles[(first+mid)%capacity]<=cycle)
+            {
+                found=mid;
+                lo=mid+1;
+            } else {
+                hi=mid-1;
+            }
+        }
+        return(found<0 ? -1 : cycles[(first+found)%capacity]);
+    }
+
+    public boolean restore(long cycle, long state[])
+    {
+        // Rebuilds the state of the checkpoint taken at 'cycle' into state[0 ... getStateLength()-1]
+        int n=-1;
+        for(int i=count-1; i>=0; i--)
+        {
+            if(cycles[(first+i)%capacity]==cycle)
+            {
+                n=i;
+                break;
+            }
+        }
+        if(n<0) return false;
+
+        int k=n;
+        while(!keyframe[(first+k)%capacity]) k--;
+        System.arraycopy(data[(first+k)%capacity],0,state,0,stateLength);
+
+        for(k++; k<=n; k++)
+        {
+            long d[] = data[(first+k)%capacity];
+            int size = sizes[(first+k)%capacity];
+            for(int i=0; i<size; i+=2) state[(int)d[i]] ^= d[i+1];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+enum ClockOverrunPolicy 
+{
+    COALESCE, SKIP
+}
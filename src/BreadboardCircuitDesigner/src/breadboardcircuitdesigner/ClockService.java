@@ -0,0 +1,163 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.util.concurrent.locks.LockSupport;
+
+class ClockService implements Runnable
+{
+    /*
+            CLOCK SERVICE
+            ------------------------------------------------
+            Runs the clocks of the power supplies of a circuit in real time, on one thread for all of them.
+            The clock edges are kept by an EventScheduler of its own (see EventScheduler: every clock has its
+            frequency and phase), whose simulated time is laid on the System.nanoTime() grid from the start:
+            every edge is due at an absolute deadline (start + its simulated time), so late wake-ups do not
+            add up to drift, and the thread parks until the next deadline. The frequencies and phases are read
+            from the power supplies before every edge, so a change takes effect at once (that clock restarts
+            from its last edge).
+
+            At each deadline, the simulated time up to the edges due is handed to the simulation worker, whose
+            engine steps the same clock edges (see SimulationEngine.advanceClocks). When the simulation falls behind:
+
+            COALESCE    --->    all the time is kept, and stepped edge after edge on the next pass of the worker
+                                (the circuit sees every clock edge, but the display lags behind)
+            SKIP        --->    while more than 1 period of the fastest clock is pending, the clocks skip whole
+                                periods (the clocks stay in real time, and keep their phase)
+
+            STATISTICS
+            ------------------------------------------------
+            lateness    --->    how long after its deadline each edge was handed over (mean, max)
+            jitter      --->    standard deviation of the lateness
+            lag         --->    simulated time handed over, but not yet simulated by the worker
+            drift       --->    simulated time reached by the worker against the real time, in parts per million
+            dropped     --->    clock edges dropped by SKIP
+    */
+
+    private final PowerSupply supplies[];
+    private final SimulationWorker worker;
+    private final ClockOverrunPolicy policy;
+    private final EventScheduler scheduler = new EventScheduler();   // owned by the clock thread
+
+    private Thread thread;
+    private volatile boolean stopped;
+
+    // ---------- statistics (guarded by 'this') ----------
+    private long startTime, startSimulatedTime, startDroppedEdges;
+    private long handedOver;
+    private long edges;
+    private double meanLateness, sumSquares;
+    private long maxLateness;
+    // ----------------------------------------------------
+
+    ClockService(PowerSupply ps[], SimulationWorker w, ClockOverrunPolicy p)
+    {
+        supplies=ps;
+        worker=w;
+        policy=p;
+    }
+
+    public ClockOverrunPolicy getPolicy() { return policy; }
+
+    public void start()
+    {
+        thread = new Thread(this,"Clock");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop()
+    {
+        stopped=true;
+        if(thread!=null) LockSupport.unpark(thread);
+    }
+
+    // ------------------------------------------
+    // Statistics
+    // ------------------------------------------
+    public synchronized long getEdgeCount() { return edges; }
+    public synchronized double getMeanLatenessMillis() { return meanLateness/1e6; }
+    public synchronized double getMaxLatenessMillis() { return maxLateness/1e6; }
+
+    public synchronized double getJitterMillis()
+    {
+        return(edges<2 ? 0 : Math.sqrt(sumSquares/(edges-1))/1e6);
+    }
+
+    public synchronized long getDroppedEdgeCount()
+    {
+        return(edges==0 ? 0 : worker.getDroppedEdgeCount()-startDroppedEdges);
+    }
+
+    public synchronized double getLagMillis()
+    {
+        return(edges==0 ? 0 : (handedOver-(worker.getSimulatedTime()-startSimulatedTime))/1e6);
+    }
+
+    public synchronized double getDriftPPM()
+    {
+        long elapsed = System.nanoTime()-startTime;
+        if(edges==0 || elapsed<=0) return 0;
+        return((worker.getSimulatedTime()-startSimulatedTime-elapsed)*1e6/elapsed);
+    }
+
+    private synchronized void record(long lateness, int n, long simulatedTime)
+    {
+        // Welford's running mean and variance of the lateness
+        for(int i=0; i<n; i++)
+        {
+            edges++;
+            double d = lateness-meanLateness;
+            meanLateness += d/edges;
+            sumSquares += d*(lateness-meanLateness);
+        }
+        maxLateness = Math.max(maxLateness,lateness);
+        handedOver = simulatedTime;
+    }
+
+    // ------------------------------------------
+    // Clock thread
+    // ------------------------------------------
+    @Override
+    public void run()
+    {
+        scheduler.sync(supplies);
+        if(scheduler.isEmpty()) return;
+
+        long gridStart = System.nanoTime();
+        long sent = 0;                              // simulated time handed to the worker
+        synchronized(this)
+        {
+            startTime = gridStart;
+            startSimulatedTime = worker.getSimulatedTime();
+            startDroppedEdges = worker.getDroppedEdgeCount();
+        }
+
+        while(!stopped)
+        {
+            // a new frequency or phase restarts that clock from its last edge
+            scheduler.sync(supplies);
+            if(scheduler.isEmpty()) return;
+
+            long deadline = gridStart + scheduler.getNextEventTime();
+            long now = System.nanoTime();
+            if(now<deadline)
+            {
+                LockSupport.parkNanos(this,deadline-now);
+                continue;                           // re-check: parkNanos may return early
+            }
+
+            // every edge up to now is due
+            int n=0;
+            while(gridStart+scheduler.getNextEventTime()<=now) n += scheduler.step(false);
+
+            long maxLag = (policy==ClockOverrunPolicy.SKIP ? 2*scheduler.getShortestHalfPeriod() : Long.MAX_VALUE);
+            worker.requestClockAdvance(scheduler.getTime()-sent,maxLag);
+            sent = scheduler.getTime();
+            record(now-deadline,n,sent);
+        }
+    }
+}
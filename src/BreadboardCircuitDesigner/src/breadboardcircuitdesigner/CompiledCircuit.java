@@ -0,0 +1,708 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class CompiledCircuit
+{
+    /*
+            COMPILED CIRCUIT
+            ------------------------------------------------
+            The ICs on a breadboard, compiled once against a netlist into flat arrays:
+
+            pinNets[pinStart[i] ... pinStart[i+1]-1]            --->    net-ID of every pin of IC #i
+            fanoutICs[fanoutStart[n] ... fanoutStart[n+1]-1]    --->    ICs having an input pin on net #n
+
+            The ICs are grouped into strongly-connected components (feedback loops), stored one after
+            the other in topological order, so that an IC can only dirty the ICs of its own component or
+            of a later one. A change in the value of a net marks its fan-out dirty, and one pass over the
+            components settles the circuit:
+
+            1.  A component of 1 IC without feedback is evaluated once, if dirty
+            2.  A feedback loop is swept (dirty members only) until none of its members is dirty
+
+            An output pin which an IC does not drive (null, e.g. the data pins of a RAM which is not read)
+            leaves its net as it is, so that several ICs can share a bus.
+
+            OSCILLATION DETECTION
+            ------------------------------------------------
+            After every sweep of a loop, the state of the loop (its output nets, dirty flags and IC storage)
+            is hashed to 64 bits and looked up in a small open-addressed table of the states seen so far.
+            A repeated state means that the loop oscillates: it is left dirty (to resume on the next run)
+            and the distance between the 2 sweeps is reported as the oscillation period. A loop which is
+            merely slow to settle is swept for as long as its states are new (up to a safety bound).
+
+            When there are no feedback loops at all, the program is LEVELIZED: a single straight-line pass.
+
+            TIMED MODE
+            ------------------------------------------------
+            runTimed is the event-driven alternative to run: every change of an IC output reaches its net only
+            after the propagation delay of the IC (see IC.getPropagationDelay, at least 1 ns), through a
+            TimingWheel. The dirty ICs are evaluated at the present time, their output changes are scheduled,
+            and then the wheel moves to the next time with a change, and so on until nothing is pending. Delays
+            are transport delays, so a pulse shorter than a delay still gets through: glitches and races show
+            as they would on the board. A circuit which is still switching after maxNanos (e.g. a ring oscillator)
+            is left where it is, with its changes pending, and resumes on the next run.
+
+            A run can be cancelled from another thread: the cancellation token is checked before every
+            component and after every sweep of a loop, and whatever was not evaluated stays dirty. A cancelled
+            run keeps the oscillation period of the run before it, since it has not found out either way.
+
+            CHECKPOINTS
+            ------------------------------------------------
+            packState saves the state of the circuit (2 bit-planes of the net states, then the packed storage of
+            every IC, copied as it is) and unpackState restores it, in time proportional to its size (see
+            CheckpointHistory). A restored program evaluates every IC once more on the next run: from a settled
+            state, that changes nothing.
+
+            Nothing is allocated while running. The program must be recompiled when the set of ICs changes.
+            When only some nets have been merged or split (see Netlist.getChangedNet), patch updates the
+            pins of the ICs on those nets instead, as long as the feedback loops and their order still hold:
+            the changed nets start floating again, and only the ICs on them are evaluated afresh.
+    */
+
+    private IC ics[];                       // in dependency order
+    private int positionOf[];               // position in 'ics' of every IC of the list compiled
+    private int sccStart[];                 // ICs of component #c are ics[sccStart[c] ... sccStart[c+1]-1]
+    private int sccOf[];                    // component of every IC
+    private boolean sccCyclic[];            // does the component have feedback?
+    private boolean levelized;
+    private int version;                    // netlist version this program was compiled against
+
+    private int pinStart[];
+    private int pinNets[];
+    private boolean pinIsInput[];
+    private int fanoutStart[];
+    private int fanoutICs[];
+
+    private HoleState inputs[][];           // input buffer of every IC
+    private HoleState outputs[][];          // output buffer of every IC
+    private long laneBuffers[][];           // input/output buffers of runBitParallel: value and known planes
+
+    private HoleState netStates[];          // present value of every net
+    private HoleState supplyStates[];       // last value driven onto each net by a power supply
+    private HoleState projectedStates[];    // value of every net once its scheduled changes are done (timed mode)
+    private int delays[];                   // propagation delay of every IC in nanoseconds (timed mode)
+
+    private boolean dirty[];
+    private int firstDirty;                 // no IC before this one is dirty
+
+    // ---------- oscillation detection ----------
+    private int sccNetStart[];              // nets driven by component #c are sccNets[sccNetStart[c] ... sccNetStart[c+1]-1]
+    private int sccNets[];
+    private long seenHashes[];              // open-addressed table of the loop states seen while settling a loop
+    private int seenSweeps[];
+    private int seenStamps[];               // entries of older loops have older stamps, so the table never needs clearing
+    private int seenCount;
+    private int stamp;
+    private int oscillationPeriod;          // longest period found in the last run (not cancelled), 0 = settled, -1 = given up on
+    // -------------------------------------------
+
+    private static final int CANCELLED = -2;        // see settleLoop
+
+    private CompiledCircuit() {}
+
+    public boolean isLevelized() { return levelized; }
+    public int getVersion() { return version; }
+    public int getICCount() { return ics.length; }
+    public int getComponentCount() { return sccCyclic.length; }
+    public int getOscillationPeriod() { return oscillationPeriod; }
+    public int getNetCount() { return netStates.length; }
+    public HoleState[] getNetStates() { return netStates; }
+    public HoleState getSupplyState(int net) { return supplyStates[net]; }      // null if no power supply drives the net
+
+    // Factory method: 'components' lists the indices (into 'ics') of the ICs of every strongly-connected component,
+    // in topological order, and 'cyclic' tells which of them have feedback
+    public static CompiledCircuit compile(ArrayList<IC> ics, int components[][], boolean cyclic[], Netlist netlist)
+    {
+        CompiledCircuit p = new CompiledCircuit();
+        int icsc = ics.size();
+        int nc = netlist.getNetCount();
+
+        p.ics = new IC[icsc];
+        p.positionOf = new int[icsc];
+        p.version = netlist.getVersion();
+
+        // Step-1: lay out the ICs component by component
+        p.sccStart = new int[components.length+1];
+        p.sccOf = new int[icsc];
+        p.sccCyclic = new boolean[components.length];
+        p.levelized = true;
+        
+        int pos=0;
+        for(int c=0; c<components.length; c++)
+        {
+            for(int m=0; m<components[c].length; m++)
+            {
+                p.sccOf[pos]=c;
+                p.positionOf[components[c][m]]=pos;
+                p.ics[pos++]=ics.get(components[c][m]);
+            }
+            p.sccStart[c+1]=pos;
+            p.sccCyclic[c]=cyclic[c];
+            if(cyclic[c]) p.levelized=false;
+        }
+
+        // Step-2: pin-to-net table
+        p.pinStart = new int[icsc+1];
+        for(int i=0; i<icsc; i++) p.pinStart[i+1] = p.pinStart[i] + p.ics[i].getPinCount();
+
+        p.pinNets = new int[p.pinStart[icsc]];
+        p.pinIsInput = new boolean[p.pinStart[icsc]];
+        p.inputs = new HoleState[icsc][];
+        p.outputs = new HoleState[icsc][];
+
+        for(int i=0; i<icsc; i++)
+        {
+            int hids[] = p.ics[i].getHoleIDs();
+            boolean isInput[] = p.ics[i].getPinTypes();
+
+            p.inputs[i] = new HoleState[hids.length];
+            p.outputs[i] = new HoleState[hids.length];
+
+            for(int j=0; j<hids.length; j++)
+            {
+                int k = p.pinStart[i]+j;
+                p.pinNets[k] = netlist.getNetID(hids[j]);
+                p.pinIsInput[k] = isInput[j];
+            }
+        }
+
+        // Step-3: fan-out table, and the nets driven by every feedback loop
+        p.buildFanout(nc);
+        p.buildLoopNets(nc);
+
+        p.seenHashes = new long[64];
+        p.seenSweeps = new int[64];
+        p.seenStamps = new int[64];
+
+        // Step-4: all nets start floating, and every IC is evaluated once to settle the initial state
+        p.netStates = new HoleState[nc];
+        p.supplyStates = new HoleState[nc];
+        p.projectedStates = new HoleState[nc];
+        for(int n=0; n<nc; n++)
+        {
+            p.netStates[n]=HoleState.NO_CONNECTION;
+            p.projectedStates[n]=HoleState.NO_CONNECTION;
+        }
+
+        p.delays = new int[icsc];
+        for(int i=0; i<icsc; i++) p.delays[i]=Math.max(1,p.ics[i].getPropagationDelay());
+
+        p.dirty = new boolean[icsc];
+        p.firstDirty = icsc;
+        for(int i=0; i<icsc; i++) p.markDirty(i);
+
+        return p;
+    }
+
+    public boolean patch(ArrayList<IC> ics, int components[][], boolean cyclic[], boolean matrix[][], boolean affected[], Netlist netlist)
+    {
+        // After an edit of the netlist (the same ICs, see compile): re-reads the pins of the ICs marked in
+        // 'affected', which are the ICs with a pin on a changed net, and evaluates only them. Returns false
+        // (and changes nothing) if the program must be recompiled: the loops or their order do not hold any more.
+        if(ics.size()!=this.ics.length || components.length!=sccCyclic.length) return false;
+
+        for(int c=0; c<components.length; c++)
+        {
+            int sc = sccOf[positionOf[components[c][0]]];
+            if(sccStart[sc+1]-sccStart[sc]!=components[c].length || sccCyclic[sc]!=cyclic[c]) return false;
+            for(int m=1; m<components[c].length; m++)
+            {
+                if(sccOf[positionOf[components[c][m]]]!=sc) return false;
+            }
+        }
+
+        for(int i=0; i<matrix.length; i++)
+        {
+            if(!affected[i]) continue;
+            for(int j=0; j<matrix.length; j++)
+            {
+                if(matrix[i][j] && sccOf[positionOf[i]]>sccOf[positionOf[j]]) return false;
+                if(matrix[j][i] && sccOf[positionOf[j]]>sccOf[positionOf[i]]) return false;
+            }
+        }
+
+        // Step-1: room for the nets added by splits
+        int nc = Math.max(netlist.getNetCount(),netStates.length);
+        if(nc>netStates.length)
+        {
+            int old = netStates.length;
+            netStates = Arrays.copyOf(netStates,nc);
+            supplyStates = Arrays.copyOf(supplyStates,nc);
+            projectedStates = Arrays.copyOf(projectedStates,nc);
+            for(int n=old; n<nc; n++)
+            {
+                netStates[n]=HoleState.NO_CONNECTION;
+                projectedStates[n]=HoleState.NO_CONNECTION;
+            }
+        }
+
+        // Step-2: the changed nets start floating (and are driven afresh by the power supplies)
+        for(int k=0; k<netlist.getChangedNetCount(); k++)
+        {
+            int n = netlist.getChangedNet(k);
+            netStates[n]=HoleState.NO_CONNECTION;
+            projectedStates[n]=HoleState.NO_CONNECTION;
+            supplyStates[n]=null;
+        }
+
+        // Step-3: pin-to-net entries of the affected ICs, then the tables built from them
+        for(int i=0; i<affected.length; i++)
+        {
+            if(!affected[i]) continue;
+
+            int pos = positionOf[i];
+            int hids[] = this.ics[pos].getHoleIDs();
+            for(int j=0; j<hids.length; j++) pinNets[pinStart[pos]+j] = netlist.getNetID(hids[j]);
+        }
+        buildFanout(nc);
+        buildLoopNets(nc);
+
+        for(int i=0; i<affected.length; i++)
+        {
+            if(affected[i]) markDirty(positionOf[i]);
+        }
+        version = netlist.getVersion();
+        return true;
+    }
+
+    private void buildFanout(int nc)
+    {
+        // an IC with several inputs on the same net is listed only once
+        int icsc = ics.length;
+        int fanoutCounts[] = new int[nc+1];
+        for(int i=0; i<icsc; i++)
+        {
+            for(int j=0; j<inputs[i].length; j++)
+            {
+                int k = pinStart[i]+j;
+                if(pinIsInput[k] && !hasEarlierInputOnNet(i,j)) fanoutCounts[pinNets[k]+1]++;
+            }
+        }
+
+        fanoutStart = new int[nc+1];
+        for(int n=0; n<nc; n++) fanoutStart[n+1] = fanoutStart[n] + fanoutCounts[n+1];
+
+        fanoutICs = new int[fanoutStart[nc]];
+        int fill[] = new int[nc];
+        for(int i=0; i<icsc; i++)
+        {
+            for(int j=0; j<inputs[i].length; j++)
+            {
+                int k = pinStart[i]+j;
+                if(!pinIsInput[k] || hasEarlierInputOnNet(i,j)) continue;
+
+                int net = pinNets[k];
+                fanoutICs[fanoutStart[net] + fill[net]++] = i;
+            }
+        }
+    }
+
+    private void buildLoopNets(int nc)
+    {
+        // nets driven by every feedback loop (for hashing its state)
+        int components = sccCyclic.length;
+        sccNetStart = new int[components+1];
+        int netList[] = new int[pinStart[ics.length]];
+        boolean listed[] = new boolean[nc];
+        int count=0;
+        for(int c=0; c<components; c++)
+        {
+            int first=count;
+            for(int i=sccStart[c]; sccCyclic[c] && i<sccStart[c+1]; i++)
+            {
+                for(int k=pinStart[i]; k<pinStart[i+1]; k++)
+                {
+                    if(pinIsInput[k] || listed[pinNets[k]]) continue;
+                    listed[pinNets[k]]=true;
+                    netList[count++]=pinNets[k];
+                }
+            }
+            for(int k=first; k<count; k++) listed[netList[k]]=false;
+            sccNetStart[c+1]=count;
+        }
+        sccNets = new int[count];
+        System.arraycopy(netList,0,sccNets,0,count);
+    }
+
+    private boolean hasEarlierInputOnNet(int icIndex, int pin)
+    {
+        int s = pinStart[icIndex];
+        for(int j=0; j<pin; j++)
+        {
+            if(pinIsInput[s+j] && pinNets[s+j]==pinNets[s+pin]) return true;
+        }
+        return false;
+    }
+
+    // ------------------------------------------
+    // Driving nets
+    // ------------------------------------------
+    public void driveNet(int net, HoleState ns)
+    {
+        // a power supply output: it raises an event only when it differs from what it drove last time
+        if(supplyStates[net]==ns) return;
+
+        supplyStates[net]=ns;
+        setNetState(net,ns);
+    }
+
+    private void setNetState(int net, HoleState ns)
+    {
+        if(netStates[net]==ns) return;
+
+        netStates[net]=ns;
+        for(int k=fanoutStart[net]; k<fanoutStart[net+1]; k++) markDirty(fanoutICs[k]);
+    }
+
+    private void markDirty(int icIndex)
+    {
+        dirty[icIndex]=true;
+        if(icIndex<firstDirty) firstDirty=icIndex;
+    }
+
+    // ------------------------------------------
+    // Running
+    // ------------------------------------------
+    public void run(int maxSweepsPerIC, AtomicBoolean cancelled)
+    {
+        // A feedback loop of n ICs is swept at most n*maxSweepsPerIC times, even if its states never repeat
+        int icsc = ics.length;
+        int unsettled = icsc;               // first IC of the first loop that did not settle
+        int previousPeriod = oscillationPeriod;
+        oscillationPeriod = 0;
+        
+        int i = firstDirty;
+        
+        while(i<icsc)
+        {
+            if(cancelled.get())
+            {
+                // resume from here on the next run
+                firstDirty=Math.min(unsettled,i);
+                oscillationPeriod=previousPeriod;
+                return;
+            }
+            
+            int c = sccOf[i];
+            int end = sccStart[c+1];
+            
+            if(!sccCyclic[c])
+            {
+                if(dirty[i])
+                {
+                    dirty[i]=false;
+                    evaluate(i);
+                }
+                i++;
+                continue;
+            }
+            
+            int period = settleLoop(c, maxSweepsPerIC * (end-sccStart[c]), cancelled);
+            if(period==CANCELLED)
+            {
+                firstDirty=Math.min(unsettled,i);
+                oscillationPeriod=previousPeriod;
+                return;
+            }
+            if(period!=0)
+            {
+                // oscillating (or given up on, -1 unless a period is known): the loop stays dirty for the next run
+                if(period>0)
+                    oscillationPeriod = Math.max(oscillationPeriod,period);
+                else if(oscillationPeriod==0)
+                    oscillationPeriod = -1;
+                if(unsettled==icsc) unsettled=sccStart[c];
+            }
+            i=end;
+        }
+        
+        // everything after the first unsettled loop has been evaluated
+        firstDirty=unsettled;
+    }
+    
+    private int settleLoop(int c, int limit, AtomicBoolean cancelled)
+    {
+        // Returns 0 if the loop settles, its period if it oscillates, -1 if it hits the limit, or CANCELLED
+        int end = sccStart[c+1];
+        
+        startLoopStates();
+        findOrAddLoopState(hashLoopState(c),0);
+        
+        for(int sweep=1; ; sweep++)
+        {
+            boolean evaluated = false;
+            for(int m=sccStart[c]; m<end; m++)
+            {
+                if(!dirty[m]) continue;
+                
+                dirty[m]=false;
+                evaluate(m);
+                evaluated = true;
+            }
+            if(!evaluated) return 0;
+            
+            int previous = findOrAddLoopState(hashLoopState(c),sweep);
+            if(previous>=0) return(sweep-previous);
+            if(sweep>=limit) return -1;
+            if(cancelled.get()) return CANCELLED;
+        }
+    }
+    
+    private long hashLoopState(int c)
+    {
+        // 64-bit FNV-1a over the nets driven by the loop, the dirty flags and the storage of its ICs
+        long h = 0xcbf29ce484222325L;
+        for(int k=sccNetStart[c]; k<sccNetStart[c+1]; k++)
+        {
+            h = (h ^ netStates[sccNets[k]].ordinal()) * 0x100000001b3L;
+        }
+        for(int m=sccStart[c]; m<sccStart[c+1]; m++)
+        {
+            h = (h ^ (dirty[m] ? 1 : 0)) * 0x100000001b3L;
+            h = ics[m].hashStorage(h);
+        }
+        return h;
+    }
+    
+    private void startLoopStates()
+    {
+        seenCount=0;
+        if(++stamp==0)
+        {
+            // stamps wrapped around: clear the table once
+            for(int k=0; k<seenStamps.length; k++) seenStamps[k]=0;
+            stamp=1;
+        }
+    }
+    
+    private int findOrAddLoopState(long h, int sweep)
+    {
+        // Returns the sweep in which this state was seen before, or -1 if it is new (and then records it)
+        if(seenCount*2>=seenHashes.length) growLoopStates();
+        
+        int mask = seenHashes.length-1;
+        int k = (int)(h ^ (h>>>32)) & mask;
+        while(seenStamps[k]==stamp)
+        {
+            if(seenHashes[k]==h) return seenSweeps[k];
+            k = (k+1) & mask;
+        }
+        
+        seenStamps[k]=stamp;
+        seenHashes[k]=h;
+        seenSweeps[k]=sweep;
+        seenCount++;
+        return -1;
+    }
+    
+    private void growLoopStates()
+    {
+        long oldHashes[] = seenHashes;
+        int oldSweeps[] = seenSweeps, oldStamps[] = seenStamps;
+        
+        seenHashes = new long[oldHashes.length*2];
+        seenSweeps = new int[oldHashes.length*2];
+        seenStamps = new int[oldHashes.length*2];
+        seenCount = 0;
+        
+        for(int k=0; k<oldHashes.length; k++)
+        {
+            if(oldStamps[k]==stamp) findOrAddLoopState(oldHashes[k],oldSweeps[k]);
+        }
+    }
+
+    public void runTimed(TimingWheel wheel, long maxNanos, AtomicBoolean cancelled)
+    {
+        // Settles the circuit in time: returns when nothing is pending, after maxNanos (reporting an
+        // oscillation period of -1), or when cancelled (the rest stays dirty or pending)
+        int icsc = ics.length;
+        long limit = wheel.getTime()+maxNanos;
+        int previousPeriod = oscillationPeriod;
+        oscillationPeriod = 0;
+        
+        while(true)
+        {
+            // Step-1: evaluate the dirty ICs at the present time, and schedule their output changes
+            for(int i=firstDirty; i<icsc; i++)
+            {
+                if(cancelled.get())
+                {
+                    firstDirty=i;
+                    oscillationPeriod=previousPeriod;
+                    return;
+                }
+                
+                if(!dirty[i]) continue;
+                dirty[i]=false;
+                evaluateTimed(i,wheel);
+            }
+            firstDirty=icsc;
+            
+            // Step-2: make the changes due at the next time (which dirties their fan-out)
+            if(wheel.isEmpty()) return;
+            if(!wheel.advance(limit))
+            {
+                oscillationPeriod = -1;
+                return;
+            }
+            for(int net=wheel.poll(); net>=0; net=wheel.poll()) setNetState(net,wheel.getPolledState());
+        }
+    }
+    
+    private void evaluateTimed(int icIndex, TimingWheel wheel)
+    {
+        HoleState in[] = inputs[icIndex];
+        HoleState out[] = outputs[icIndex];
+        int s = pinStart[icIndex];
+
+        for(int j=0; j<in.length; j++) in[j]=netStates[pinNets[s+j]];
+
+        ics[icIndex].getOutputs(in,out);
+
+        // Schedule the outputs which differ from what their nets are (or are going to be)
+        for(int j=0; j<out.length; j++)
+        {
+            if(pinIsInput[s+j] || out[j]==null) continue;
+            
+            int net = pinNets[s+j];
+            if(out[j]==projectedStates[net] && out[j]==netStates[net]) continue;
+            
+            projectedStates[net]=out[j];
+            wheel.schedule(delays[icIndex],net,out[j]);
+        }
+    }
+
+    private void evaluate(int icIndex)
+    {
+        HoleState in[] = inputs[icIndex];
+        HoleState out[] = outputs[icIndex];
+        int s = pinStart[icIndex];
+
+        // Form the input array: output pins carry the present state of their net as well
+        for(int j=0; j<in.length; j++) in[j]=netStates[pinNets[s+j]];
+
+        ics[icIndex].getOutputs(in,out);
+
+        // Update the nets based on outputs
+        for(int j=0; j<out.length; j++)
+        {
+            if(!pinIsInput[s+j] && out[j]!=null) setNetState(pinNets[s+j],out[j]);
+        }
+    }
+
+    // ------------------------------------------
+    // Bit-parallel run (see TruthTableSweep)
+    // ------------------------------------------
+    public boolean isCombinational()
+    {
+        for(int i=0; i<ics.length; i++)
+        {
+            if(ics[i].getICType()!=ICType.COMBINATIONAL) return false;
+        }
+        return true;
+    }
+    
+    public void runBitParallel(long netValue[], long netKnown[])
+    {
+        // One pass over all ICs, with 64 input vectors per net (requires isLevelized() and isCombinational())
+        if(laneBuffers==null)
+        {
+            int maxPins=0;
+            for(int i=0; i<ics.length; i++) maxPins=Math.max(maxPins,inputs[i].length);
+            laneBuffers = new long[4][maxPins];
+        }
+        
+        long inValue[] = laneBuffers[0], inKnown[] = laneBuffers[1];
+        long outValue[] = laneBuffers[2], outKnown[] = laneBuffers[3];
+        
+        for(int i=0; i<ics.length; i++)
+        {
+            int s = pinStart[i];
+            int pc = inputs[i].length;
+            
+            for(int j=0; j<pc; j++)
+            {
+                inValue[j]=netValue[pinNets[s+j]];
+                inKnown[j]=netKnown[pinNets[s+j]];
+            }
+            
+            ics[i].getOutputs(inValue,inKnown,outValue,outKnown);
+            
+            for(int j=0; j<pc; j++)
+            {
+                if(pinIsInput[s+j]) continue;
+                netValue[pinNets[s+j]]=outValue[j];
+                netKnown[pinNets[s+j]]=outKnown[j];
+            }
+        }
+    }
+    
+    // ------------------------------------------
+    // Checkpoints
+    // ------------------------------------------
+    public int getPackedStateLength()
+    {
+        int words=0;
+        for(int i=0; i<ics.length; i++) words += ics[i].getStorageLength();
+        return 2*((netStates.length+63)>>>6) + words;
+    }
+
+    public void packState(long dst[], int pos)
+    {
+        int planeLength = (netStates.length+63)>>>6;
+        for(int k=pos; k<pos+2*planeLength; k++) dst[k]=0;
+
+        for(int n=0; n<netStates.length; n++)
+        {
+            long bit = 1L << (n & 63);
+            if(netStates[n]!=HoleState.NO_CONNECTION) dst[pos+(n>>>6)] |= bit;
+            if(netStates[n]==HoleState.HIGH) dst[pos+planeLength+(n>>>6)] |= bit;
+        }
+
+        int base = pos+2*planeLength;
+        for(int i=0; i<ics.length; i++)
+        {
+            ics[i].saveStorage(dst,base);
+            base += ics[i].getStorageLength();
+        }
+    }
+
+    public void unpackState(long src[], int pos)
+    {
+        int planeLength = (netStates.length+63)>>>6;
+        for(int n=0; n<netStates.length; n++)
+        {
+            long bit = 1L << (n & 63);
+            if((src[pos+(n>>>6)] & bit)==0)
+                netStates[n]=HoleState.NO_CONNECTION;
+            else
+                netStates[n]=((src[pos+planeLength+(n>>>6)] & bit)!=0 ? HoleState.HIGH : HoleState.LOW);
+
+            projectedStates[n]=netStates[n];
+            supplyStates[n]=null;           // driven afresh on the next run: an unchanged value raises no event
+        }
+
+        int base = pos+2*planeLength;
+        for(int i=0; i<ics.length; i++)
+        {
+            ics[i].restoreStorage(src,base);
+            base += ics[i].getStorageLength();
+        }
+
+        oscillationPeriod=0;
+        for(int i=0; i<ics.length; i++) markDirty(i);
+    }
+
+    public void expand(int holeToNet[], HoleStateVector state)
+    {
+        for(int i=0; i<state.size(); i++) state.set(i,netStates[holeToNet[i]]);
+    }
+}
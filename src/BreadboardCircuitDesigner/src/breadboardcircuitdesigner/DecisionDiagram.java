@@ -0,0 +1,156 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+class DecisionDiagram
+{
+    /*
+            DECISION DIAGRAM
+            ------------------------------------------------
+            A function table compiled into a reduced ordered decision diagram, for the tables which have
+            too many inputs for a lookup table (see ICDefinition.compileLookupTables). Every node tests one
+            input pin, in the order of the table columns, and goes to its low or high child; a terminal holds
+            what the last satisfied row drives every output pin to, encoded as in a lookup table entry:
+
+            evaluate    --->    at most one node per input, then one terminal
+
+            It is built by splitting the rows of the table on one input after the other (a row with a
+            don't-care goes both ways) down to the rows which are satisfied by a whole path. Nodes and
+            terminals are shared (a node with equal children is dropped, equal nodes and terminals are
+            kept once), so the rows with many don't-cares only cost a few nodes.
+    */
+
+    private static final HoleState STATES[] = HoleState.values();
+
+    private final int inputPins[];              // 0-based pin tested at every level
+    private final int outputPins[];             // 0-based pin of every output of a terminal
+
+    // ---------- during the build only ----------
+    private TruthValue conditions[][];          // [row][input]
+    private byte drive[][];                     // [row][output]
+    private HashMap<String,Integer> builtNodes = new HashMap<String,Integer>();
+    private HashMap<String,Integer> uniqueNodes = new HashMap<String,Integer>();
+    private HashMap<String,Integer> uniqueTerminals = new HashMap<String,Integer>();
+    // -------------------------------------------
+
+    // ---------- diagram ----------
+    private int nodes[] = new int[3*16];        // { level, low child, high child } per node: child >= 0 a node, ~child a terminal
+    private int nodeCount;
+    private byte terminals[] = new byte[0];     // outputPins.length entries per terminal
+    private int terminalCount;
+    private int root;
+    // -----------------------------
+
+    DecisionDiagram(int inputPins[], int outputPins[], TruthValue conditions[][], byte drive[][])
+    {
+        this.inputPins = inputPins;
+        this.outputPins = outputPins;
+        this.conditions = conditions;
+        this.drive = drive;
+
+        int rows[] = new int[conditions.length];
+        for(int r=0; r<rows.length; r++) rows[r]=r;
+        root = build(0,rows);
+
+        nodes = Arrays.copyOf(nodes,3*nodeCount);
+        terminals = Arrays.copyOf(terminals,terminalCount*outputPins.length);
+        this.conditions = null;
+        this.drive = null;
+        builtNodes = null;
+        uniqueNodes = null;
+        uniqueTerminals = null;
+    }
+
+    public int getNodeCount() { return nodeCount; }
+    public int getTerminalCount() { return terminalCount; }
+
+    public boolean evaluate(HoleState inputs[], HoleState out[])
+    {
+        // false if an input is not connected, as only a don't-care matches it (the path may not test
+        // that input at all, if it is a don't-care there for the rows which are left)
+        for(int i=0; i<inputPins.length; i++)
+        {
+            if(inputs[inputPins[i]]==HoleState.NO_CONNECTION) return false;
+        }
+
+        int n = root;
+        while(n>=0) n = nodes[3*n + (inputs[inputPins[nodes[3*n]]]==HoleState.HIGH ? 2 : 1)];
+
+        int base = (~n)*outputPins.length;
+        for(int o=0; o<outputPins.length; o++)
+        {
+            int v = terminals[base+o];
+            if(v<0) continue;
+            out[outputPins[o]] = (v<ICDefinition.LOOKUP_PIN_REFERENCE ? STATES[v] : inputs[v-ICDefinition.LOOKUP_PIN_REFERENCE]);
+        }
+        return true;
+    }
+
+    private int build(int level, int rows[])
+    {
+        // 'rows' = the rows (in table order) which are satisfied so far
+        if(level==inputPins.length) return ~terminal(rows);
+
+        String key = level+":"+Arrays.toString(rows);
+        Integer built = builtNodes.get(key);
+        if(built!=null) return built;
+
+        int low[] = new int[rows.length], high[] = new int[rows.length];
+        int nl=0, nh=0;
+        for(int i=0; i<rows.length; i++)
+        {
+            TruthValue tv = conditions[rows[i]][level];
+            if(tv!=TruthValue.HIGH) low[nl++]=rows[i];
+            if(tv!=TruthValue.LOW) high[nh++]=rows[i];
+        }
+
+        int lo = build(level+1,Arrays.copyOf(low,nl));
+        int hi = build(level+1,Arrays.copyOf(high,nh));
+        int n = (lo==hi ? lo : node(level,lo,hi));
+        builtNodes.put(key,n);
+        return n;
+    }
+
+    private int node(int level, int lo, int hi)
+    {
+        String key = level+","+lo+","+hi;
+        Integer n = uniqueNodes.get(key);
+        if(n!=null) return n;
+
+        if(3*nodeCount==nodes.length) nodes = Arrays.copyOf(nodes,2*nodes.length);
+        nodes[3*nodeCount] = level;
+        nodes[3*nodeCount+1] = lo;
+        nodes[3*nodeCount+2] = hi;
+        uniqueNodes.put(key,nodeCount);
+        return nodeCount++;
+    }
+
+    private int terminal(int rows[])
+    {
+        // a later satisfied row overrides the outputs it drives
+        byte t[] = new byte[outputPins.length];
+        Arrays.fill(t,(byte)-1);
+        for(int i=0; i<rows.length; i++)
+        {
+            for(int o=0; o<t.length; o++)
+            {
+                if(drive[rows[i]][o]>=0) t[o]=drive[rows[i]][o];
+            }
+        }
+
+        String key = Arrays.toString(t);
+        Integer n = uniqueTerminals.get(key);
+        if(n!=null) return n;
+
+        if((terminalCount+1)*t.length>terminals.length) terminals = Arrays.copyOf(terminals,Math.max(16,2*terminals.length+t.length));
+        System.arraycopy(t,0,terminals,terminalCount*t.length,t.length);
+        uniqueTerminals.put(key,terminalCount);
+        return terminalCount++;
+    }
+}
@@ -0,0 +1,224 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.util.PriorityQueue;
+
+class EventScheduler
+{
+    /*
+            EVENT SCHEDULER
+            ------------------------------------------------
+            Discrete-event scheduler of the clock edges, in simulated time (nanoseconds, from 0). Every power
+            supply with a frequency registers its own clock: an edge every half-period (at 50% duty cycle),
+            delayed by its phase (in degrees of a period). The edges wait in a priority queue ordered by time,
+            then by the order the clocks were registered in, so a circuit with several clocks is stepped the
+            same way on every run:
+
+            sync        --->    (re-)register the clocks of the power supplies: a new frequency or phase
+                                restarts that clock from its last edge, the other clocks keep their edges
+            step        --->    move to the time of the next edge, and trigger every clock with an edge then
+                                (the engine settles the circuit after each step, see SimulationEngine.advanceClocks)
+            skip        --->    move the time forward, dropping whole clock periods (the clock levels keep their phase)
+
+            Not thread-safe: the engine and the clock service (see ClockService) each keep their own.
+            Stepping an edge allocates nothing. packState/unpackState save and restore the time and the edges
+            of the registered clocks (see CheckpointHistory), as long as the clocks stay the same.
+    */
+
+    private static class ClockEvent implements Comparable<ClockEvent>
+    {
+        PowerSupply supply;
+        int order;                  // order of registration, for edges at the same time
+        double frequency, phase;    // as registered
+        long halfPeriod;
+        long lastTime, time;        // of the last and the next edge
+
+        @Override
+        public int compareTo(ClockEvent e)
+        {
+            if(time!=e.time) return(time<e.time ? -1 : 1);
+            return(order-e.order);
+        }
+    }
+
+    private final PriorityQueue<ClockEvent> queue = new PriorityQueue<ClockEvent>();
+    private ClockEvent clocks[] = new ClockEvent[0];
+    private ClockEvent due[] = new ClockEvent[0];
+    private long time;
+    private long droppedEdges;
+
+    public long getTime() { return time; }
+    public long getDroppedEdgeCount() { return droppedEdges; }
+    public boolean isEmpty() { return queue.isEmpty(); }
+
+    public long getNextEventTime()
+    {
+        // Long.MAX_VALUE if there is no clock
+        return(queue.isEmpty() ? Long.MAX_VALUE : queue.peek().time);
+    }
+
+    public long getShortestHalfPeriod()
+    {
+        long h = Long.MAX_VALUE;
+        for(int i=0; i<clocks.length; i++) h = Math.min(h,clocks[i].halfPeriod);
+        return h;
+    }
+
+    public void reset()
+    {
+        queue.clear();
+        clocks = new ClockEvent[0];
+        time = 0;
+        droppedEdges = 0;
+    }
+
+    public int getPackedStateLength() { return 1+2*clocks.length; }
+
+    public void packState(long dst[], int pos)
+    {
+        dst[pos++] = time;
+        for(int i=0; i<clocks.length; i++)
+        {
+            dst[pos++] = clocks[i].lastTime;
+            dst[pos++] = clocks[i].time;
+        }
+    }
+
+    public void unpackState(long src[], int pos)
+    {
+        time = src[pos++];
+        queue.clear();
+        for(int i=0; i<clocks.length; i++)
+        {
+            clocks[i].lastTime = src[pos++];
+            clocks[i].time = src[pos++];
+            queue.add(clocks[i]);
+        }
+    }
+
+    // ------------------------------------------
+    // Clocks
+    // ------------------------------------------
+    public boolean sync(PowerSupply supplies[])
+    {
+        // Returns true if a clock has been registered, removed, or restarted
+        int n=0;
+        for(int i=0; i<supplies.length; i++)
+        {
+            if(supplies[i].getFrequency()>0) n++;
+        }
+
+        boolean changed = (n!=clocks.length);
+        for(int i=0, j=0; i<supplies.length && !changed; i++)
+        {
+            PowerSupply ps = supplies[i];
+            if(ps.getFrequency()<=0) continue;
+
+            ClockEvent e = clocks[j++];
+            changed = (e.supply!=ps || e.frequency!=ps.getFrequency() || e.phase!=ps.getClockPhase());
+        }
+        if(!changed) return false;
+
+        // re-register: a clock which was already there goes on from its last edge
+        ClockEvent c[] = new ClockEvent[n];
+        queue.clear();
+        for(int i=0, j=0; i<supplies.length; i++)
+        {
+            PowerSupply ps = supplies[i];
+            if(ps.getFrequency()<=0) continue;
+
+            ClockEvent e = find(ps);
+            double shift = 0;           // in degrees
+            if(e==null)
+            {
+                e = new ClockEvent();
+                e.supply = ps;
+                e.lastTime = time;
+                shift = ps.getClockPhase();
+            } else if(e.phase!=ps.getClockPhase()) {
+                shift = ((ps.getClockPhase()-e.phase)%360+360)%360;
+            }
+            e.order = j;
+
+            if(e.time==0 || e.frequency!=ps.getFrequency() || shift!=0)
+            {
+                e.frequency = ps.getFrequency();
+                e.phase = ps.getClockPhase();
+                e.halfPeriod = Math.max(1,(long)(1e9 * PowerSupply.DUTY_CYCLE / e.frequency));
+                e.time = e.lastTime + e.halfPeriod + (long)(2 * e.halfPeriod * (shift/360.0));
+            }
+
+            c[j++] = e;
+            queue.add(e);
+        }
+
+        clocks = c;
+        if(due.length<n) due = new ClockEvent[n];
+        return true;
+    }
+
+    private ClockEvent find(PowerSupply ps)
+    {
+        for(int i=0; i<clocks.length; i++)
+        {
+            if(clocks[i].supply==ps) return clocks[i];
+        }
+        return null;
+    }
+
+    // ------------------------------------------
+    // Stepping
+    // ------------------------------------------
+    public int step(boolean trigger)
+    {
+        // Returns the number of edges at the next time (0 if there is no clock). The clocks are only
+        // triggered if asked: the clock service only keeps time, and lets the engine trigger them.
+        if(queue.isEmpty()) return 0;
+
+        time = Math.max(time,queue.peek().time);      // an edge kept by skip() may be a little late
+        int n=0;
+        while(!queue.isEmpty() && queue.peek().time<=time) due[n++] = queue.poll();
+
+        for(int i=0; i<n; i++)
+        {
+            ClockEvent e = due[i];
+            if(trigger) e.supply.trigger();
+            e.lastTime = e.time;
+            e.time += e.halfPeriod;         // on its own grid, even when late
+            queue.add(e);
+            due[i] = null;
+        }
+        return n;
+    }
+
+    public long skip(long toTime)
+    {
+        // Moves the time forward to 'toTime' without stepping, and returns the number of edges dropped.
+        // A clock only drops whole periods: when it has an odd number of edges on the way, the last one is kept.
+        if(toTime<=time) return 0;
+
+        long dropped=0;
+        queue.clear();
+        for(int i=0; i<clocks.length; i++)
+        {
+            ClockEvent e = clocks[i];
+            if(e.time<=toTime)
+            {
+                long edges = (toTime-e.time)/e.halfPeriod + 1;
+                long skipped = 2*(edges/2);
+                e.lastTime = e.time + (skipped-1)*e.halfPeriod;
+                e.time += skipped*e.halfPeriod;
+                dropped += skipped;
+            }
+            queue.add(e);
+        }
+
+        time = toTime;
+        droppedEdges += dropped;
+        return dropped;
+    }
+}
@@ -54,10 +54,32 @@ class FileIO
     
     protected static Object[] openCircuit(String filePath) throws Exception
     {
+        // Returns { components, wires, circuit width, circuit height }, or null if the file is not supported
+        // (does not touch the GUI, so that it can be used by HeadlessSimulator as well)
+        return parseCircuit(readFile(filePath));
+    }
+    
+    protected static String readFile(String filePath) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader br = new BufferedReader(new FileReader(filePath));
+        try
+        {
+            String s;
+            while((s=br.readLine())!=null) sb.append(s).append('\n');
+        } finally {
+            br.close();
+        }
+        return sb.toString();
+    }
+    
+    protected static Object[] parseCircuit(String text) throws Exception
+    {
+        // As openCircuit, from the contents of a file: every call makes a new copy of the circuit (see FuzzRunner)
         // ----------------------
         // 1st Pass (for independent components)
         // ----------------------
-        BufferedReader br = new BufferedReader(new FileReader(filePath));
+        BufferedReader br = new BufferedReader(new StringReader(text));
         String s = br.readLine();
         if(!s.substring(0,3).equalsIgnoreCase("bcf"))
         {
@@ -74,8 +96,7 @@ class FileIO
         }
         
         String x[] = br.readLine().split(",");
-        MainWindow.circuitWidth = Integer.parseInt(x[0]);
-        MainWindow.circuitHeight = Integer.parseInt(x[1]);
+        int width = Integer.parseInt(x[0]), height = Integer.parseInt(x[1]);
         
         x = br.readLine().split(",");
         int cc = Integer.parseInt(x[0]), wc = Integer.parseInt(x[1]);
@@ -88,11 +109,9 @@ class FileIO
             
             CircuitComponent c = null;
             if(t==ComponentType.BREADBOARD) {
-                MainWindow.breadboardCounter++;
                 c = Breadboard.parseFromString(s);
             } else if(t==ComponentType.POWER_SUPPLY) {
                 c = PowerSupply.parseFromString(s);
-                MainWindow.powerSupplyCounter++;
             }
             
             if(c!=null) c.lock();
@@ -107,7 +126,7 @@ class FileIO
         ArrayList<CircuitComponent> components=new ArrayList<CircuitComponent>(cc);
         ArrayList<Wire> wires=new ArrayList<Wire>(wc);
         
-        br = new BufferedReader(new FileReader(filePath));
+        br = new BufferedReader(new StringReader(text));
         br.readLine();          // file format and version
         br.readLine();          // circuit dimensions
         br.readLine();          // no. of components, and no. of wires
@@ -150,6 +169,6 @@ class FileIO
         
         
         
-        return(new Object[] { components, wires });
+        return(new Object[] { components, wires, width, height });
     }
 }
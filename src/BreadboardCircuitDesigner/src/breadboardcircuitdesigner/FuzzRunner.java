@@ -0,0 +1,349 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+class FuzzRunner
+{
+    /*
+            FUZZ RUNNER
+            ------------------------------------------------
+            Drives a circuit file with random input vectors and clock sequences, on all cores, and checks
+            invariants after every vector:
+
+            java -jar BreadboardCircuitDesigner.jar --fuzz <circuit.bcf> --inputs <h1,h2,...> [options]
+
+            --inputs <h1,h2,...>        breadboard holes driven with random values (HIGH or LOW)
+            --vectors <N>               number of vectors in all (default: 100000)
+            --threads <N>               number of engines, one per core (default: all the cores)
+            --seed <S>                  engine #i uses the seed S+i, so a run can be repeated (default: 1)
+            --clock-steps <N>           before every vector, the clocks take 0 to N steps (default: 2)
+            --check <invariant>         may be repeated:
+                                            glyphs          every 7-segment LED shows a hex digit, or nothing
+                                            <hole>!=<H|L|N> the hole is never in that state
+                                            <hole>==<H|L|N> the hole is always in that state
+            --reference <ref.bcf>       a reference circuit, driven with the same vectors and clock steps
+            --outputs <h1,h2,...>       the holes which must match in both circuits (with --reference)
+
+            The file is read once, and parsed into an independent copy of the circuit (components, wires and
+            SimulationEngine) per thread, so the engines share nothing and the throughput grows with the cores.
+            The copies run as tasks of a ForkJoinPool. Every power supply is switched on, with its clock.
+
+            Exit codes: 0 = no violation, 1 = the circuit could not be loaded, 2 = bad arguments, 3 = violations
+    */
+
+    public static final int MAX_REPORTED_VIOLATIONS = 10;
+
+    // "abcdefg" segments of 0-9 (9 with or without its tail; 6 without its tail is the same as b), A-F, and blank
+    private static final String GLYPHS[] = {
+        "abcdef", "bc", "abdeg", "abcdg", "bcfg", "acdfg", "acdefg", "abc", "abcdefg", "abcdfg", "abcfg",
+        "abcefg", "cdefg", "adef", "bcdeg", "adefg", "aefg", ""
+    };
+    private static final String SEGMENTS = "abcdefg";
+
+    private int inputHoleIDs[] = new int[0];
+    private int outputHoleIDs[] = new int[0];
+    private long vectors = 100000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+    private int maxClockSteps = 2;
+
+    private boolean checkGlyphs;
+    private ArrayList<int[]> holeChecks = new ArrayList<int[]>();     // { holeID, state ordinal, 1 = always / 0 = never }
+
+    public static int run(String args[])
+    {
+        // args[0] is "--fuzz"
+        FuzzRunner f = new FuzzRunner();
+        String circuitFile = null, referenceFile = null;
+
+        try
+        {
+            for(int i=1; i<args.length; i++)
+            {
+                if(args[i].equals("--inputs"))
+                    f.inputHoleIDs=parseHoleIDs(args[++i].split(","));
+                else if(args[i].equals("--outputs"))
+                    f.outputHoleIDs=parseHoleIDs(args[++i].split(","));
+                else if(args[i].equals("--vectors"))
+                    f.vectors=Long.parseLong(args[++i]);
+                else if(args[i].equals("--threads"))
+                    f.threads=Integer.parseInt(args[++i]);
+                else if(args[i].equals("--seed"))
+                    f.seed=Long.parseLong(args[++i]);
+                else if(args[i].equals("--clock-steps"))
+                    f.maxClockSteps=Integer.parseInt(args[++i]);
+                else if(args[i].equals("--check"))
+                    f.parseCheck(args[++i]);
+                else if(args[i].equals("--reference"))
+                    referenceFile=args[++i];
+                else if(circuitFile==null && !args[i].startsWith("--"))
+                    circuitFile=args[i];
+                else
+                    throw new IllegalArgumentException("Unknown option: "+args[i]);
+            }
+            if(circuitFile==null) throw new IllegalArgumentException("No circuit file given.");
+            if(f.inputHoleIDs.length==0) throw new IllegalArgumentException("No input holes given.");
+            if(f.threads<1 || f.vectors<1 || f.maxClockSteps<0) throw new IllegalArgumentException("Invalid number of threads, vectors or clock steps.");
+            if(referenceFile!=null && f.outputHoleIDs.length==0) throw new IllegalArgumentException("No output holes to compare with the reference circuit.");
+        } catch(RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: --fuzz <circuit.bcf> --inputs h1,h2,... [--vectors N] [--threads N] [--seed S] [--clock-steps N] "
+                    + "[--check glyphs|hole!=H|hole==L ...] [--reference ref.bcf --outputs h1,h2,...]");
+            return 2;
+        }
+
+        // read once, parse once per engine
+        Instance instances[] = new Instance[f.threads];
+        try
+        {
+            String text = FileIO.readFile(circuitFile);
+            String referenceText = (referenceFile==null ? null : FileIO.readFile(referenceFile));
+            for(int i=0; i<f.threads; i++)
+            {
+                long n = f.vectors/f.threads + (i<f.vectors%f.threads ? 1 : 0);
+                instances[i] = f.new Instance(i, n, Circuit.parse(text), (referenceText==null ? null : Circuit.parse(referenceText)));
+            }
+        } catch(Exception e) {
+            System.err.println("Error opening the circuit file: "+e);
+            return 1;
+        }
+
+        return f.fuzz(instances);
+    }
+
+    private int fuzz(Instance instances[])
+    {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long t0 = System.nanoTime();
+        List<Future<Instance>> results;
+        try
+        {
+            ArrayList<Callable<Instance>> tasks = new ArrayList<Callable<Instance>>();
+            for(int i=0; i<instances.length; i++) tasks.add(instances[i]);
+            results = pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = Math.max(1, System.nanoTime()-t0);
+
+        long violations=0, done=0;
+        ArrayList<String> reported = new ArrayList<String>();
+        for(int i=0; i<results.size(); i++)
+        {
+            Instance x;
+            try
+            {
+                x = results.get(i).get();
+            } catch(InterruptedException | ExecutionException e) {
+                System.err.println("Engine #"+i+" failed: "+e);
+                continue;
+            }
+            done += x.done;
+            violations += x.violations;
+            for(int k=0; k<x.messages.size() && reported.size()<MAX_REPORTED_VIOLATIONS; k++) reported.add(x.messages.get(k));
+        }
+
+        double perSecond = done*1e9/elapsed;
+        System.out.println(String.format("%d vectors on %d engines in %.3f s: %.0f vectors/s, %.0f vectors/s/core",
+                done, instances.length, elapsed/1e9, perSecond, perSecond/instances.length));
+        System.out.println("violations: "+violations);
+        for(int i=0; i<reported.size(); i++) System.out.println("  "+reported.get(i));
+        return(violations>0 ? 3 : 0);
+    }
+
+    // ------------------------------------------
+    // One engine
+    // ------------------------------------------
+    private static class Circuit
+    {
+        ArrayList<CircuitComponent> components;
+        ArrayList<Wire> wires;
+        Breadboard breadboard;
+        ArrayList<SevenSegmentLED> displays = new ArrayList<SevenSegmentLED>();
+        final SimulationEngine engine = new SimulationEngine();
+
+        static Circuit parse(String text) throws Exception
+        {
+            Object obj[] = FileIO.parseCircuit(text);
+            if(obj==null) throw new IllegalArgumentException("unsupported file");
+
+            @SuppressWarnings("unchecked")
+            ArrayList<CircuitComponent> components = (ArrayList<CircuitComponent>)obj[0];
+            @SuppressWarnings("unchecked")
+            ArrayList<Wire> wires = (ArrayList<Wire>)obj[1];
+
+            Circuit c = new Circuit();
+            c.components = components;
+            c.wires = wires;
+            for(int i=0; i<c.components.size(); i++)
+            {
+                CircuitComponent x = c.components.get(i);
+                if(x.getType()==ComponentType.POWER_SUPPLY)
+                {
+                    ((PowerSupply)x).setPoweredOn(true);
+                    ((PowerSupply)x).setClockOn(true);
+                } else if(x.getType()==ComponentType.SEVEN_SEGMENT_LED) {
+                    c.displays.add((SevenSegmentLED)x);
+                } else if(x.getType()==ComponentType.BREADBOARD && c.breadboard==null) {
+                    c.breadboard=(Breadboard)x;
+                }
+            }
+            if(c.breadboard==null) throw new IllegalArgumentException("no breadboard");
+            return c;
+        }
+
+        void apply(int holeIDs[], HoleState values[], int clockSteps)
+        {
+            for(int i=0; i<holeIDs.length; i++) engine.forceHole(holeIDs[i],values[i]);
+            for(int i=0; i<clockSteps; i++) engine.stepClocks(components,wires);
+            engine.simulate(components,wires);
+        }
+    }
+
+    private class Instance implements Callable<Instance>
+    {
+        final int id;
+        final long count;
+        final Circuit circuit, reference;
+
+        long done, violations;
+        final ArrayList<String> messages = new ArrayList<String>();
+        private final HoleState values[] = new HoleState[inputHoleIDs.length];
+
+        Instance(int id, long count, Circuit circuit, Circuit reference)
+        {
+            this.id=id;
+            this.count=count;
+            this.circuit=circuit;
+            this.reference=reference;
+        }
+
+        @Override
+        public Instance call()
+        {
+            Random r = new Random(seed+id);
+            for(long v=0; v<count; v++)
+            {
+                for(int i=0; i<values.length; i++) values[i]=(r.nextBoolean() ? HoleState.HIGH : HoleState.LOW);
+                int clockSteps = r.nextInt(maxClockSteps+1);
+
+                circuit.apply(inputHoleIDs,values,clockSteps);
+                if(reference!=null) reference.apply(inputHoleIDs,values,clockSteps);
+
+                String failure = check();
+                if(failure!=null)
+                {
+                    violations++;
+                    if(messages.size()<MAX_REPORTED_VIOLATIONS) messages.add("seed "+(seed+id)+", vector #"+v+" (inputs "+getValues()+", "+clockSteps+" clock steps): "+failure);
+                }
+                done++;
+            }
+            return this;
+        }
+
+        private String check()
+        {
+            // the first invariant which does not hold, or null
+            if(checkGlyphs)
+            {
+                for(int i=0; i<circuit.displays.size(); i++)
+                {
+                    String lit = getLitSegments(circuit.displays.get(i));
+                    if(!isGlyph(lit)) return circuit.displays.get(i).getName()+" shows the invalid glyph \""+lit+"\"";
+                }
+            }
+
+            for(int i=0; i<holeChecks.size(); i++)
+            {
+                int c[] = holeChecks.get(i);
+                HoleState s = circuit.breadboard.getHoleState(c[0]);
+                boolean is = (s.ordinal()==c[1]);
+                if(is!=(c[2]==1)) return "hole "+c[0]+" is "+s+(c[2]==1 ? ", not "+HoleState.values()[c[1]] : "");
+            }
+
+            if(reference!=null)
+            {
+                for(int i=0; i<outputHoleIDs.length; i++)
+                {
+                    HoleState s = circuit.breadboard.getHoleState(outputHoleIDs[i]);
+                    HoleState rs = reference.breadboard.getHoleState(outputHoleIDs[i]);
+                    if(s!=rs) return "hole "+outputHoleIDs[i]+" is "+s+", but "+rs+" in the reference circuit";
+                }
+            }
+            return null;
+        }
+
+        private String getValues()
+        {
+            StringBuilder sb = new StringBuilder();
+            for(int i=0; i<values.length; i++) sb.append(values[i]==HoleState.HIGH ? '1' : '0');
+            return sb.toString();
+        }
+    }
+
+    // ------------------------------------------
+    // Utility
+    // ------------------------------------------
+    private static String getLitSegments(SevenSegmentLED d)
+    {
+        // the decimal point is left out
+        StringBuilder sb = new StringBuilder();
+        for(int j=0; j<SEGMENTS.length(); j++)
+        {
+            if(d.isON(SEGMENTS.charAt(j))) sb.append(SEGMENTS.charAt(j));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isGlyph(String lit)
+    {
+        for(int i=0; i<GLYPHS.length; i++)
+        {
+            if(GLYPHS[i].equals(lit)) return true;
+        }
+        return false;
+    }
+
+    private void parseCheck(String spec)
+    {
+        if(spec.equalsIgnoreCase("glyphs"))
+        {
+            checkGlyphs=true;
+            return;
+        }
+
+        boolean always = spec.contains("==");
+        String x[] = spec.split(always ? "==" : "!=");
+        if(x.length!=2 || (!always && !spec.contains("!="))) throw new IllegalArgumentException("Invalid invariant: "+spec);
+
+        int holeID = parseHoleIDs(new String[] { x[0] })[0];
+        HoleState s;
+        switch(x[1].trim().toUpperCase())
+        {
+            case "H": s=HoleState.HIGH; break;
+            case "L": s=HoleState.LOW; break;
+            case "N": s=HoleState.NO_CONNECTION; break;
+            default: throw new IllegalArgumentException("Invalid state in invariant: "+spec);
+        }
+        holeChecks.add(new int[] { holeID, s.ordinal(), (always ? 1 : 0) });
+    }
+
+    private static int[] parseHoleIDs(String x[])
+    {
+        int ids[] = new int[x.length];
+        for(int i=0; i<x.length; i++)
+        {
+            ids[i]=Integer.parseInt(x[i].trim());
+            if(!BreadboardUtility.isHoleIDValid(ids[i])) throw new IllegalArgumentException("Invalid hole: "+ids[i]);
+        }
+        return ids;
+    }
+}
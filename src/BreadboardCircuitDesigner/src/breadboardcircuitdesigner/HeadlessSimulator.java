@@ -0,0 +1,374 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.io.*;
+import java.util.ArrayList;
+
+class HeadlessSimulator
+{
+    /*
+            HEADLESS SIMULATOR
+            ------------------------------------------------
+            Simulates a circuit file without the GUI, and streams what can be observed to the standard output:
+
+            java -jar BreadboardCircuitDesigner.jar --headless <circuit.bcf> [options]
+
+            --cycles <N>            number of cycles to simulate (default: 1, or the number of stimulus vectors)
+            --stimulus <file.csv>   values to force onto breadboard holes, one vector per cycle (see readStimulus)
+            --holes <h1,h2,...>     breadboard holes to report, besides the LEDs and 7-segment LEDs
+            --format <csv|json>     output format (default: csv); json prints one object per line
+            --timed                 settle with the propagation delays of the ICs (see SimulationEngine: timed mode)
+            --vcd <file.vcd>        also record the stimulus and report holes, and write them as a Value Change Dump
+                                    (see WaveformRecorder), in simulated time
+            --sweep <h1,h2,...>     instead of simulating cycles, print the truth table of the report holes over every
+                                    combination of values of these input holes (see SimulationEngine.sweepTruthTable):
+                                    one line per vector, vector #v setting input #k to bit k of v
+
+            Every power supply is switched on, with its clock. Cycle #0 is the power-up state, and each
+            later cycle steps the clocks to their next edge (see SimulationEngine: clocks) before settling.
+            The last stimulus vector is held when there are more cycles than vectors.
+
+            Exit codes: 0 = done, 1 = the circuit could not be loaded (or swept, or the waveforms written), 2 = bad arguments or stimulus
+    */
+
+    private static final String SEGMENTS = "abcdefg.";
+
+    private ArrayList<CircuitComponent> components;
+    private ArrayList<Wire> wires;
+    private ArrayList<PowerSupply> supplies = new ArrayList<PowerSupply>();
+    private ArrayList<LED> leds = new ArrayList<LED>();
+    private ArrayList<SevenSegmentLED> displays = new ArrayList<SevenSegmentLED>();
+    private Breadboard breadboard;
+
+    private int stimulusHoleIDs[] = new int[0];
+    private ArrayList<HoleState[]> stimulus = new ArrayList<HoleState[]>();
+    private int probeHoleIDs[] = new int[0];
+    private boolean json;
+
+    private final SimulationEngine engine = new SimulationEngine();
+
+    public static int run(String args[])
+    {
+        // args[0] is "--headless"
+        HeadlessSimulator h = new HeadlessSimulator();
+        String circuitFile = null, stimulusFile = null, vcdFile = null;
+        int cycles = -1;
+        int sweepHoleIDs[] = null;
+
+        try
+        {
+            for(int i=1; i<args.length; i++)
+            {
+                if(args[i].equals("--cycles"))
+                    cycles=Integer.parseInt(args[++i]);
+                else if(args[i].equals("--stimulus"))
+                    stimulusFile=args[++i];
+                else if(args[i].equals("--holes"))
+                    h.probeHoleIDs=parseHoleIDs(args[++i].split(","));
+                else if(args[i].equals("--format"))
+                    h.json=args[++i].equalsIgnoreCase("json");
+                else if(args[i].equals("--timed"))
+                    h.engine.setTimedMode(true);
+                else if(args[i].equals("--vcd"))
+                    vcdFile=args[++i];
+                else if(args[i].equals("--sweep"))
+                    sweepHoleIDs=parseHoleIDs(args[++i].split(","));
+                else if(circuitFile==null && !args[i].startsWith("--"))
+                    circuitFile=args[i];
+                else
+                    throw new IllegalArgumentException("Unknown option: "+args[i]);
+            }
+            if(circuitFile==null) throw new IllegalArgumentException("No circuit file given.");
+            if(sweepHoleIDs!=null && h.probeHoleIDs.length==0) throw new IllegalArgumentException("A sweep needs the holes to report (--holes).");
+            if(stimulusFile!=null) h.readStimulus(stimulusFile);
+        } catch(IOException e) {
+            System.err.println("Error reading stimulus: "+e.getMessage());
+            return 2;
+        } catch(RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: --headless <circuit.bcf> [--cycles N] [--stimulus vectors.csv] [--holes h1,h2,...] [--format csv|json] [--timed] [--vcd waves.vcd] [--sweep h1,h2,...]");
+            return 2;
+        }
+
+        try
+        {
+            if(!h.load(circuitFile)) return 1;
+        } catch(Exception e) {
+            System.err.println("Error opening the circuit file: "+e);
+            return 1;
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        if(sweepHoleIDs!=null)
+        {
+            TruthTableSweep sweep = h.engine.sweepTruthTable(h.components,h.wires,sweepHoleIDs,h.probeHoleIDs);
+            if(sweep==null)
+            {
+                System.err.println("The circuit could not be swept (it must be powered, and its ICs combinational without feedback).");
+                return 1;
+            }
+            h.printSweep(sweep,sweepHoleIDs,out);
+            out.flush();
+            return 0;
+        }
+
+        if(cycles<0) cycles=Math.max(1,h.stimulus.size());
+        if(vcdFile!=null) h.startRecording();
+
+        h.simulate(cycles,out);
+        out.flush();
+
+        if(vcdFile!=null)
+        {
+            try
+            {
+                Writer w = new FileWriter(vcdFile);
+                try
+                {
+                    h.engine.getRecorder().writeVCD(w);
+                } finally {
+                    w.close();
+                }
+            } catch(IOException e) {
+                System.err.println("Error writing the waveforms: "+e.getMessage());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private void startRecording()
+    {
+        int holeIDs[] = new int[stimulusHoleIDs.length+probeHoleIDs.length];
+        System.arraycopy(stimulusHoleIDs,0,holeIDs,0,stimulusHoleIDs.length);
+        System.arraycopy(probeHoleIDs,0,holeIDs,stimulusHoleIDs.length,probeHoleIDs.length);
+        engine.setRecorder(new WaveformRecorder(holeIDs,WaveformRecorder.DEFAULT_CAPACITY));
+    }
+
+    private boolean load(String filePath) throws Exception
+    {
+        Object obj[] = FileIO.openCircuit(filePath);
+        if(obj==null) return false;
+
+        @SuppressWarnings("unchecked")
+        ArrayList<CircuitComponent> loadedComponents = (ArrayList<CircuitComponent>)obj[0];
+        @SuppressWarnings("unchecked")
+        ArrayList<Wire> loadedWires = (ArrayList<Wire>)obj[1];
+        components = loadedComponents;
+        wires = loadedWires;
+
+        for(int i=0; i<components.size(); i++)
+        {
+            CircuitComponent c = components.get(i);
+            if(c.getType()==ComponentType.POWER_SUPPLY)
+                supplies.add((PowerSupply)c);
+            else if(c.getType()==ComponentType.LED)
+                leds.add((LED)c);
+            else if(c.getType()==ComponentType.SEVEN_SEGMENT_LED)
+                displays.add((SevenSegmentLED)c);
+            else if(c.getType()==ComponentType.BREADBOARD && breadboard==null)
+                breadboard=(Breadboard)c;
+        }
+
+        for(int i=0; i<supplies.size(); i++)
+        {
+            supplies.get(i).setPoweredOn(true);
+            supplies.get(i).setClockOn(true);
+        }
+        return true;
+    }
+
+    private void simulate(int cycles, PrintWriter out)
+    {
+        if(!json) printHeader(out);
+
+        for(int cycle=0; cycle<cycles; cycle++)
+        {
+            if(stimulus.size()>0)
+            {
+                HoleState v[] = stimulus.get(Math.min(cycle,stimulus.size()-1));
+                for(int i=0; i<v.length; i++) engine.forceHole(stimulusHoleIDs[i],v[i]);
+            }
+
+            if(cycle>0) engine.stepClocks(components,wires);
+            engine.simulate(components,wires);
+
+            if(json)
+                printJSON(cycle,out);
+            else
+                printCSV(cycle,out);
+        }
+    }
+
+    // ------------------------------------------
+    // Output
+    // ------------------------------------------
+    private void printHeader(PrintWriter out)
+    {
+        StringBuilder sb = new StringBuilder("cycle");
+        for(int i=0; i<leds.size(); i++) sb.append(',').append(leds.get(i).getName());
+        for(int i=0; i<displays.size(); i++) sb.append(',').append(displays.get(i).getName());
+        for(int i=0; i<probeHoleIDs.length; i++) sb.append(',').append(probeHoleIDs[i]);
+        out.println(sb);
+    }
+
+    private void printCSV(int cycle, PrintWriter out)
+    {
+        // LED: 1 = lit, 7-segment LED: its lit segments ("abcdefg."), hole: H / L / N (no connection)
+        StringBuilder sb = new StringBuilder();
+        sb.append(cycle);
+        for(int i=0; i<leds.size(); i++) sb.append(',').append(leds.get(i).isON() ? '1' : '0');
+        for(int i=0; i<displays.size(); i++) sb.append(',').append(getLitSegments(displays.get(i)));
+        for(int i=0; i<probeHoleIDs.length; i++) sb.append(',').append(getProbeState(probeHoleIDs[i]).toString().charAt(0));
+        out.println(sb);
+    }
+
+    private void printJSON(int cycle, PrintWriter out)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"cycle\":").append(cycle);
+
+        sb.append(",\"leds\":{");
+        for(int i=0; i<leds.size(); i++)
+        {
+            if(i>0) sb.append(',');
+            sb.append('"').append(leds.get(i).getName()).append("\":").append(leds.get(i).isON());
+        }
+
+        sb.append("},\"displays\":{");
+        for(int i=0; i<displays.size(); i++)
+        {
+            if(i>0) sb.append(',');
+            sb.append('"').append(displays.get(i).getName()).append("\":\"").append(getLitSegments(displays.get(i))).append('"');
+        }
+
+        sb.append("},\"holes\":{");
+        for(int i=0; i<probeHoleIDs.length; i++)
+        {
+            if(i>0) sb.append(',');
+            sb.append('"').append(probeHoleIDs[i]).append("\":\"").append(getProbeState(probeHoleIDs[i])).append('"');
+        }
+        sb.append("}}");
+
+        out.println(sb);
+    }
+
+    private void printSweep(TruthTableSweep sweep, int inputHoleIDs[], PrintWriter out)
+    {
+        // hole: H / L / N (no connection), as printCSV; json prints one object per vector
+        if(!json)
+        {
+            StringBuilder sb = new StringBuilder();
+            for(int i=0; i<inputHoleIDs.length; i++) sb.append(inputHoleIDs[i]).append(',');
+            for(int i=0; i<probeHoleIDs.length; i++) sb.append(i>0 ? "," : "").append(probeHoleIDs[i]);
+            out.println(sb);
+        }
+
+        for(int v=0; v<sweep.getVectorCount(); v++)
+        {
+            StringBuilder sb = new StringBuilder();
+            if(json) sb.append("{\"vector\":").append(v).append(",\"inputs\":{");
+            for(int i=0; i<inputHoleIDs.length; i++)
+            {
+                HoleState in = (((v>>>i) & 1)!=0 ? HoleState.HIGH : HoleState.LOW);
+                if(json)
+                    sb.append(i>0 ? "," : "").append('"').append(inputHoleIDs[i]).append("\":\"").append(in).append('"');
+                else
+                    sb.append(in.toString().charAt(0)).append(',');
+            }
+
+            if(json) sb.append("},\"holes\":{");
+            for(int i=0; i<probeHoleIDs.length; i++)
+            {
+                HoleState o = sweep.getOutputState(i,v);
+                if(json)
+                    sb.append(i>0 ? "," : "").append('"').append(probeHoleIDs[i]).append("\":\"").append(o).append('"');
+                else
+                    sb.append(i>0 ? "," : "").append(o.toString().charAt(0));
+            }
+            if(json) sb.append("}}");
+
+            out.println(sb);
+        }
+    }
+
+    private String getLitSegments(SevenSegmentLED d)
+    {
+        StringBuilder sb = new StringBuilder();
+        for(int j=0; j<SEGMENTS.length(); j++)
+        {
+            if(d.isON(SEGMENTS.charAt(j))) sb.append(SEGMENTS.charAt(j));
+        }
+        return sb.toString();
+    }
+
+    private HoleState getProbeState(int holeID)
+    {
+        return(breadboard==null ? HoleState.NO_CONNECTION : breadboard.getHoleState(holeID));
+    }
+
+    // ------------------------------------------
+    // Input
+    // ------------------------------------------
+    private void readStimulus(String filePath) throws IOException
+    {
+        /*
+            STIMULUS FORMAT (*.csv)
+            ----------------
+            <holeID>,<holeID>,...           (header: the breadboard holes to force)
+            <value>,<value>,...             (one line per cycle)
+
+            value = 1 or H (high), 0 or L (low), Z or N (no connection: leave floating)
+        */
+        BufferedReader br = new BufferedReader(new FileReader(filePath));
+        try
+        {
+            String s = br.readLine();
+            if(s==null) return;
+            stimulusHoleIDs = parseHoleIDs(s.split(","));
+
+            int line=1;
+            while((s=br.readLine())!=null)
+            {
+                line++;
+                if(s.trim().length()==0) continue;
+
+                String x[] = s.split(",");
+                if(x.length!=stimulusHoleIDs.length) throw new IllegalArgumentException("Stimulus line "+line+": expected "+stimulusHoleIDs.length+" values.");
+
+                HoleState v[] = new HoleState[x.length];
+                for(int i=0; i<x.length; i++)
+                {
+                    v[i]=parseValue(x[i].trim());
+                    if(v[i]==null) throw new IllegalArgumentException("Stimulus line "+line+": invalid value '"+x[i].trim()+"'.");
+                }
+                stimulus.add(v);
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    private static int[] parseHoleIDs(String x[])
+    {
+        int ids[] = new int[x.length];
+        for(int i=0; i<x.length; i++)
+        {
+            ids[i]=Integer.parseInt(x[i].trim());
+            if(!BreadboardUtility.isHoleIDValid(ids[i])) throw new IllegalArgumentException("Invalid hole: "+ids[i]);
+        }
+        return ids;
+    }
+
+    private static HoleState parseValue(String v)
+    {
+        if(v.equals("1") || v.equalsIgnoreCase("H")) return HoleState.HIGH;
+        if(v.equals("0") || v.equalsIgnoreCase("L")) return HoleState.LOW;
+        if(v.equalsIgnoreCase("Z") || v.equalsIgnoreCase("N")) return HoleState.NO_CONNECTION;
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+class HoleStateVector
+{
+    /*
+            PACKED HOLE STATES
+            ------------------------------------------------
+            A fixed-size vector of HoleStates, packed into 2 bit-planes (1 bit per hole in each):
+
+            driven = 0              --->    NO_CONNECTION
+            driven = 1, value = 0   --->    LOW
+            driven = 1, value = 1   --->    HIGH
+
+            830 holes take 13 longs per plane, so comparing 2 vectors is 26 word XORs,
+            and a snapshot is 2 array clones.
+    */
+
+    private int size;
+    private long driven[];
+    private long value[];
+
+    HoleStateVector(int size)
+    {
+        // all NO_CONNECTION
+        this.size=size;
+        driven=new long[(size+63)>>>6];
+        value=new long[driven.length];
+    }
+
+    public int size() { return size; }
+
+    public HoleState get(int index)
+    {
+        long bit = 1L << index;
+        int w = index>>>6;
+
+        if((driven[w] & bit)==0) return HoleState.NO_CONNECTION;
+        return((value[w] & bit)==0 ? HoleState.LOW : HoleState.HIGH);
+    }
+
+    public void set(int index, HoleState state)
+    {
+        long bit = 1L << index;
+        int w = index>>>6;
+
+        if(state==HoleState.NO_CONNECTION)
+        {
+            driven[w] &= ~bit;
+            value[w] &= ~bit;
+        } else {
+            driven[w] |= bit;
+            if(state==HoleState.HIGH)
+                value[w] |= bit;
+            else
+                value[w] &= ~bit;
+        }
+    }
+
+    public void clear()
+    {
+        for(int w=0; w<driven.length; w++)
+        {
+            driven[w]=0;
+            value[w]=0;
+        }
+    }
+
+    public boolean differsFrom(HoleStateVector v)
+    {
+        if(v==null || v.size!=size) return true;
+        for(int w=0; w<driven.length; w++)
+        {
+            if(((driven[w] ^ v.driven[w]) | (value[w] ^ v.value[w]))!=0) return true;
+        }
+        return false;
+    }
+
+    public void copyFrom(HoleStateVector v)
+    {
+        System.arraycopy(v.driven,0,driven,0,driven.length);
+        System.arraycopy(v.value,0,value,0,value.length);
+    }
+
+    public HoleStateVector copy()
+    {
+        HoleStateVector v = new HoleStateVector(size);
+        v.copyFrom(this);
+        return v;
+    }
+
+    public int getPackedLength() { return 2*driven.length; }
+
+    public void pack(long dst[], int pos)
+    {
+        // the 2 bit-planes, one after the other
+        System.arraycopy(driven,0,dst,pos,driven.length);
+        System.arraycopy(value,0,dst,pos+driven.length,value.length);
+    }
+
+    public void unpack(long src[], int pos)
+    {
+        System.arraycopy(src,pos,driven,0,driven.length);
+        System.arraycopy(src,pos+driven.length,value,0,value.length);
+    }
+
+    public HoleState[] toArray()
+    {
+        HoleState states[] = new HoleState[size];
+        for(int i=0; i<size; i++) states[i]=get(i);
+        return states;
+    }
+
+    public static HoleStateVector fromArray(HoleState states[])
+    {
+        HoleStateVector v = new HoleStateVector(states.length);
+        for(int i=0; i<states.length; i++) v.set(i,states[i]);
+        return v;
+    }
+}
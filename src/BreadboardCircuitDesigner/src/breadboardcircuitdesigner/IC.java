@@ -17,37 +17,47 @@ import static breadboardcircuitdesigner.BreadboardUtility.*;
 class IC extends CircuitComponent 
 {
     private static int counter = 0;
+    private static final HoleState STATES[] = HoleState.values();
     
     private Breadboard base;
     private int firstPinHoleID;             // Pin #1
     
     private String icName;
     
-    // ------------ to be read from file --------------
+    // ------------ shared with every IC of the part (see ICDefinition), never modified --------------
+    private ICDefinition definition;
     private String icText;
     private String description;
     private int pinCount;
     private boolean isInput[];
     
     private ICType icType;
-    private boolean isStorageMatrix;
-    private int wordSize;
-    private int storageArray[];             // either this is null
-    private int storageMatrix[][];          // or this is null, depending on isStorageMatrix
+    private int propagationDelay;           // in nanoseconds, 0 if the datasheet gives none (see CompiledCircuit.runTimed)
     
     private int tableCount;
     private int rowCounts[];
     private int tablePins[][];
     private int tablePinType[][];           // 0=normal pin, 1=array, 2=matrix
-    private int tablePinMemoryIndex[][][];  // last dimension is 3, but if pintype=1 then it stores only 2 data (index & bit), else 3 data (row,col,bit)
-    private int arrayIndices[][][][];
-    private int matrixIndices[][][][];
+    private int columnAddresses[][];        // bit address of every memory column (see ICDefinition, STORAGE)
+    private int cellReferences[][][];       // of every MEMORY cell: a bit address, or ~pin for a pin reference
     private TruthValue functionTable[][][];
-    private int holeIDs[];                      // to be computed based on firstPinHoleID
+    private int lookupInputPins[][];
+    private int lookupOutputPins[][];
+    private byte lookupTables[][];          // null for a part with storage
+    private DecisionDiagram decisionDiagrams[];
+    private int addressPins[];              // of a ROM or RAM part (see ICDefinition, MEMORY PARTS)
+    private int dataPins[];
     // ------------------------------------------------
     
+    private long storage[];                 // packed bits of the memory words, null for a combinational IC
+    private MemoryBank memory;              // contents of a ROM or RAM part, null otherwise
+    private int writeAddress = -1;          // address of the RAM write in progress, -1 if none
+    private int holeIDs[];                  // to be computed based on firstPinHoleID
+    
+    public ICDefinition getDefinition() { return definition; }
     public String getDescription() { return description; }
     public ICType getICType() { return icType; }
+    public int getPropagationDelay() { return propagationDelay; }
     public String getICText() { return icText; }
     public int getPinCount() { return pinCount; }
     public boolean[] getPinTypes() { return isInput; }
@@ -59,6 +69,8 @@ class IC extends CircuitComponent
     public int getHoleIDOfPin(int pin) { return holeIDs[pin-1]; }
     public boolean isInputPin(int pin) { return isInput[pin-1]; }
     public boolean isOutputPin(int pin) { return !isInput[pin-1]; }
+    public boolean isMemoryIC() { return(memory!=null); }
+    public MemoryBank getMemory() { return memory; }
     
     IC(Breadboard b, int holeID, String n)
     {
@@ -75,7 +87,8 @@ class IC extends CircuitComponent
         icName=n;
         
         try {
-            readData();
+            definition = ICDefinition.get(icName);
+            if(definition!=null) useDefinition();
         } catch(IOException e) {
             Utility.alert("Error reading chip("+icName+") datasheet.");
             System.out.println(e);
@@ -197,6 +210,19 @@ class IC extends CircuitComponent
         if(inputs.length!=pinCount) return null;
         
         HoleState out[]=new HoleState[pinCount];
+        getOutputs(inputs,out);
+        return out;
+    }
+    
+    public void getOutputs(HoleState inputs[], HoleState out[])
+    {
+        // Same as above, but writes into a caller-supplied array (length = pinCount) instead of allocating one
+        if(memory!=null)
+        {
+            accessMemory(inputs,out);
+            return;
+        }
+        
         for(int i=0; i<pinCount; i++)
         {
             if(isInput[i]) 
@@ -207,374 +233,348 @@ class IC extends CircuitComponent
         
         for(int t=0; t<tableCount; t++)
         {
-            for(int r=0; r<rowCounts[t]; r++)
+            // a combinational table is looked up, unless one of its inputs is not connected
+            if(lookupTables!=null)
+            {
+                if(lookupTables[t]!=null && lookUp(t,inputs,out)) continue;
+                if(decisionDiagrams[t]!=null && decisionDiagrams[t].evaluate(inputs,out)) continue;
+            }
+            walkTable(t,inputs,out);
+        }
+    }
+    
+    private boolean lookUp(int t, HoleState inputs[], HoleState out[])
+    {
+        // Direct-indexed version of walkTable (see ICDefinition.compileLookupTables): false if an input
+        // of the table is not connected, as only a don't-care matches it
+        int pins[] = lookupInputPins[t];
+        int index = 0;
+        for(int i=0; i<pins.length; i++)
+        {
+            HoleState s = inputs[pins[i]];
+            if(s==HoleState.NO_CONNECTION) return false;
+            if(s==HoleState.HIGH) index |= (1<<i);
+        }
+        
+        int outs[] = lookupOutputPins[t];
+        byte lut[] = lookupTables[t];
+        int base = index*outs.length;
+        for(int o=0; o<outs.length; o++)
+        {
+            int v = lut[base+o];
+            if(v<0) continue;               // not driven by the satisfied rows
+            out[outs[o]] = (v<ICDefinition.LOOKUP_PIN_REFERENCE ? STATES[v] : inputs[v-ICDefinition.LOOKUP_PIN_REFERENCE]);
+        }
+        return true;
+    }
+    
+    private void walkTable(int t, HoleState inputs[], HoleState out[])
+    {
+        for(int r=0; r<rowCounts[t]; r++)
+        {
+            // Check if the row-values in the input-columns form a satisfiable condition
+            boolean f=true;
+            for(int c=0; f && c<tablePins[t].length; c++)
             {
-                // Check if the row-values in the input-columns form a satisfiable condition
-                boolean f=true;
+                TruthValue tv = functionTable[t][r][c];
+                int pinIndex=tablePins[t][c]-1;
+                
+                if(tablePinType[t][c]==0)       // actual pin
+                {
+                    if(!isInput[pinIndex]) continue;
+
+                    boolean cond = areEqual(tv,inputs[pinIndex]);
+                    
+                    if(tv==TruthValue.MEMORY)
+                    {
+                        // actual-pin column cannot have memory reference as value because it is INPUT column
+                        Utility.alert("Invalid condition #1");
+                    } else {
+                        f=f && cond;
+                    }
+                } else {
+                    // when table-column header is itself a memory reference
+                    // array or matrix: therefore it is always input (because it is stored internally)
+                    // WARNING: 'pinIndex' is bogus here
+                    if(tablePinType[t][c]>2) continue;     // output
+                    
+                    // check only inputs
+                    // if it is memory and is an input column then it can only have values
+                    if(tv==TruthValue.MEMORY)
+                    {
+                        // NOT POSSIBLE: since table-column is memory itself, it cannot have yet another memory reference
+                        Utility.alert("Invalid condition #2");
+                    } else {
+                        f = f && areEqual(tv,getStorageBit(columnAddresses[t][c]));
+                    }
+                }
+            }
+            
+            if(f)
+            {
+                // Condition is satisfied, so determine the output
                 for(int c=0; f && c<tablePins[t].length; c++)
                 {
                     TruthValue tv = functionTable[t][r][c];
                     int pinIndex=tablePins[t][c]-1;
                     
-                    if(tablePinType[t][c]==0)       // actual pin
+                    if(tablePinType[t][c]==0)
                     {
-                        if(!isInput[pinIndex]) continue;
+                        // actual pin
+                        if(isInput[pinIndex]) continue;
 
-                        boolean cond = areEqual(tv,inputs[pinIndex]);
-                        
-                        if(tv==TruthValue.MEMORY)
-                        {
-                            // actual-pin column cannot have memory reference as value because it is INPUT column
-                            Utility.alert("Invalid condition #1");
-                        } else {
-                            f=f && cond;
-                        }
+                        if(tv==TruthValue.HIGH)
+                            out[pinIndex]=HoleState.HIGH;
+                        else if(tv==TruthValue.LOW)
+                            out[pinIndex]=HoleState.LOW;
+                        else if(tv==TruthValue.MEMORY)
+                            out[pinIndex]=getReferencedState(cellReferences[t][r][c],inputs);
                     } else {
-                        // when table-column header is itself a memory reference
-                        // array or matrix: therefore it is always input (because it is stored internally)
+                        // memory
                         // WARNING: 'pinIndex' is bogus here
-                        if(tablePinType[t][c]>2) continue;     // output
+                        if(tablePinType[t][c]<=2) continue;     // input
                         
-                        // check only inputs
-                        // if it is memory and is an input column then it can only have values
-                        if(tv==TruthValue.MEMORY)
-                        {
-                            // NOT POSSIBLE: since table-column is memory itself, it cannot have yet another memory reference
-                            Utility.alert("Invalid condition #2");
-                        } else {
-                            if(isStorageMatrix)
-                            {
-                                f = f && areEqual(tv,getHoleStateFromMatrixStorage(tablePinMemoryIndex[t][c]));
-                            } else {
-                                f = f && areEqual(tv,getHoleStateFromArrayStorage(tablePinMemoryIndex[t][c]));
-                            }
-                        }
-                    }
-                }
-                
-                if(f)
-                {
-                    // Condition is satisfied, so determine the output
-                    for(int c=0; f && c<tablePins[t].length; c++)
-                    {
-                        TruthValue tv = functionTable[t][r][c];
-                        int pinIndex=tablePins[t][c]-1;
+                        HoleState ov=null;
+                        if(tv==TruthValue.HIGH)
+                            ov=HoleState.HIGH;
+                        else if(tv==TruthValue.LOW)
+                            ov=HoleState.LOW;
+                        else if(tv==TruthValue.MEMORY)
+                            ov=getReferencedState(cellReferences[t][r][c],inputs);
                         
-                        if(tablePinType[t][c]==0)
-                        {
-                            // actual pin
-                            if(isInput[pinIndex]) continue;
-
-                            if(tv==TruthValue.HIGH)
-                                out[pinIndex]=HoleState.HIGH;
-                            else if(tv==TruthValue.LOW)
-                                out[pinIndex]=HoleState.LOW;
-                            else if(tv==TruthValue.MEMORY) {
-                                if(isStorageMatrix)
-                                {
-                                    out[pinIndex]=getHoleStateFromMatrixStorage(matrixIndices[t][r][c]);
-                                } else {
-                                    if(arrayIndices[t][r][c][0]==-1)
-                                    {
-                                        // pin reference
-                                        out[pinIndex]=inputs[arrayIndices[t][r][c][1]];
-                                    } else {
-                                        out[pinIndex]=getHoleStateFromArrayStorage(arrayIndices[t][r][c]);
-                                    }
-                                }
-                            }
-                        } else {
-                            // memory
-                            // WARNING: 'pinIndex' is bogus here
-                            if(tablePinType[t][c]<=2) continue;     // input
-                            
-                            HoleState ov=null;
-                            if(tv==TruthValue.HIGH)
-                                ov=HoleState.HIGH;
-                            else if(tv==TruthValue.LOW)
-                                ov=HoleState.LOW;
-                            else if(tv==TruthValue.MEMORY) {
-                                if(isStorageMatrix)
-                                {
-                                    ov=getHoleStateFromMatrixStorage(matrixIndices[t][r][c]);
-                                } else {
-                                    if(arrayIndices[t][r][c][0]==-1)
-                                    {
-                                        // pin reference
-                                        ov=inputs[arrayIndices[t][r][c][1]];
-                                    } else {
-                                        ov=getHoleStateFromArrayStorage(arrayIndices[t][r][c]);
-                                    }
-                                }
-                            }
-                            
-                            // check only outputs
-                            if(tablePinType[t][c]==3)
-                            {
-                                // store into array: storageArray[tablePinMemoryIndex[t][c][0]] at bit position tablePinMemoryIndex[t][c][1]
-                                int pos = tablePinMemoryIndex[t][c][0];
-                                int bit = tablePinMemoryIndex[t][c][1];
-                                setBitInMemoryArray(pos,bit,ov);
-                            } else if(tablePinType[t][c]==4) {
-                                // store into matrix
-                                int row = tablePinMemoryIndex[t][c][0];
-                                int col = tablePinMemoryIndex[t][c][1];
-                                int bit = tablePinMemoryIndex[t][c][2];
-                                setBitInMemoryMatrix(row,col,bit,ov);
-                            }
-                        }
+                        // check only outputs: store into the array or matrix
+                        // (a don't-care, or a reference to a pin which is not connected, leaves the bit as it is)
+                        if(ov==HoleState.HIGH)
+                            setStorageBit(columnAddresses[t][c],true);
+                        else if(ov==HoleState.LOW)
+                            setStorageBit(columnAddresses[t][c],false);
                     }
                 }
             }
         }
-        
-        return out;
     }
     
-    
-    private boolean areEqual(TruthValue tv, HoleState hs)
+    private void accessMemory(HoleState inputs[], HoleState out[])
     {
-        if(tv==TruthValue.HIGH && hs==HoleState.HIGH) return true;
-        if(tv==TruthValue.LOW && hs==HoleState.LOW) return true;
-        if(tv==TruthValue.DONT_CARE) return true;
-        return false;
-    }
-    
-    private void setBitInMemoryArray(int pos, int bit, HoleState val)
-    {
-        int k = (val==HoleState.HIGH ? (1 << bit) : ~(1 << bit));
-        storageArray[pos] |= k;
-    }
-    
-    private void setBitInMemoryMatrix(int row, int col, int bit, HoleState val)
-    {
-        int k = (val==HoleState.HIGH ? (1 << bit) : ~(1 << bit));
-        storageMatrix[row][col] |= k;
-    }
+        // A ROM or RAM part: the data pins are driven while it is read, and are null (not driven, the
+        // net keeps its state) otherwise, so that other parts can drive a data bus shared with it
+        for(int i=0; i<pinCount; i++) out[i]=(isInput[i] ? inputs[i] : null);
         
-    private HoleState getHoleStateFromMatrixStorage(int index[])
-    {
-        int row = index[0], col = index[1], bit = index[2];
-        return(getBitAsHoleState(storageMatrix[row][col],bit));
-    }
-    
-    private HoleState getHoleStateFromArrayStorage(int index[])
-    {
-        int pos = index[0], bit = index[1];
-        return(getBitAsHoleState(storageArray[pos],bit));
-    }
-    
-    private HoleState getBitAsHoleState(int data, int bit)
-    {
-        // 0 <= bit < wordSize
-        int d = data % (int)Math.pow(2,wordSize);
+        int power[] = definition.getPowerPins();
+        if(inputs[power[0]]!=HoleState.HIGH || inputs[power[1]]!=HoleState.LOW) return;
         
-        // right-shift 'bit' times, and then mask with 0x00000001
-        int d2 = (d >> bit) & 0x00000001;
-        return(d2==0 ? HoleState.LOW : HoleState.HIGH);
-    }
-    
-    private void readData() throws IOException
-    {
-        /*
-            -----------------------------
-                    FILE FORMAT (7408)
-            -----------------------------
-            ICName   = 7408
-            Description = Quad 2-input AND gate
-            ICText   = SN74LS08
-            PinCount = 14
-            IIOIIOIOIIOIII  (for pins 1 to 14) [I=input, O=output, VCC and GND are inputs]
-            C               (C=Combinational circuit, A/M=Flip-flop/memory, A(n) or M(x,y) = size of array or 2D matrix (memory storage)
-            TableCount=4    (4 tables for the 4 AND gates)
-            4,7,14,1,2,3    <rows,pins> (rows=4, table-columns=pins 7,14,1,2 and 3)
-            4,7,14,4,5,6
-            4,7,14,10,9,8
-            4,7,14,13,12,11
-            
-            0,1,0,0,0       (Table-1: IF P7=0, P14=1, P1=0, P2=0, then P3=0)
-            0,1,0,1,0
-            0,1,1,0,0
-            0,1,1,1,1
-        
-            ...             (similarly for Tables 2-4)
-        */
-        
-        InputStream file = IC.class.getResourceAsStream("resources/ic/" + icName + ".icds");
-        BufferedReader br = new BufferedReader(new InputStreamReader(file));
-        
-        String icn = br.readLine();
-        if(!icn.equalsIgnoreCase(icName))
+        int address=0;
+        for(int b=0; b<addressPins.length; b++)
         {
-            Utility.alert("Invalid chip("+icName+") datasheet: IC-Name does not match.");
-            br.close();
-            return;
+            HoleState s = inputs[addressPins[b]];
+            if(s==HoleState.NO_CONNECTION)
+            {
+                address=-1;
+                break;
+            }
+            if(s==HoleState.HIGH) address |= (1<<b);
         }
         
-        description = br.readLine();
-        icText = br.readLine();
-        pinCount = Integer.parseInt(br.readLine());
-        String ioString = br.readLine().toLowerCase();
+        boolean selected = (inputs[definition.getSelectPin()]==HoleState.LOW);
+        int wp = definition.getWritePin();
+        boolean writing = (selected && wp>=0 && inputs[wp]==HoleState.LOW);
         
-        if(ioString.length()!=pinCount)
+        // The data pins are outputs, so a change of the data alone does not evaluate the IC: a write
+        // stores them on every evaluation while it lasts, and once more on the one which ends it
+        if(writeAddress>=0) storeData(writeAddress,inputs);
+        writeAddress=-1;
+        if(writing && address>=0)
         {
-            Utility.alert("Invalid chip("+icName+") datasheet: Pin-count does not match.");
-            br.close();
-            return;
+            storeData(address,inputs);
+            writeAddress=address;
         }
         
-        // ----------- Computation -----------------------------
-        isInput = new boolean[pinCount];
-        holeIDs = new int[pinCount];        
-        for(int i=0; i<pinCount; i++) isInput[i]=(ioString.charAt(i)=='i');
-        // -----------------------------------------------------
+        if(!selected || writing || address<0 || inputs[definition.getOutputEnablePin()]!=HoleState.LOW) return;
         
-        // ----------- Determine IC-Type -----------------------
-        String temp = br.readLine().trim().toLowerCase();        // C or A(w,n) or M(w,x,y), where C=combinational, A=array, M=matrix, w=Word-size in bits, n=length of array, (x,y) are matrix dimensions
-        if(temp.charAt(0)=='c')
+        int word = memory.read(address);
+        for(int b=0; b<dataPins.length; b++) out[dataPins[b]] = (((word>>>b)&1)==0 ? HoleState.LOW : HoleState.HIGH);
+    }
+    
+    private void storeData(int address, HoleState inputs[])
+    {
+        // a data pin which is not connected leaves its bit as it is
+        int word = memory.read(address);
+        for(int b=0; b<dataPins.length; b++)
         {
-            icType=ICType.COMBINATIONAL;
-        } else {
-            icType=ICType.MEMORY;
-            isStorageMatrix=(temp.charAt(0)=='m');
-            if(temp.charAt(1)!='(' || temp.charAt(temp.length()-1)!=')')
-            {
-                Utility.alert("Invalid chip data.");
-                br.close();
-                return;
-            } else {
-                String x[] = temp.substring(2,temp.length()-1).split(",");
-                if((isStorageMatrix && x.length!=3)||(!isStorageMatrix && x.length!=2))
-                {
-                    Utility.alert("Invalid chip data.");
-                    br.close();
-                    return;
-                } else {
-                    wordSize=Integer.parseInt(x[0]);
-                    if(wordSize>32)
-                    {
-                        Utility.alert("Chip Word-Size unsupported.");
-                        br.close();
-                        return;
-                    }
-                    
-                    if(isStorageMatrix)
-                    {
-                        storageArray = null;
-                        storageMatrix = new int[Integer.parseInt(x[1])][Integer.parseInt(x[2])];
-                    } else {
-                        storageMatrix = null;
-                        storageArray = new int[Integer.parseInt(x[1])];
-                    }
-                }
-            }
+            HoleState s = inputs[dataPins[b]];
+            if(s==HoleState.HIGH)
+                word |= (1<<b);
+            else if(s==HoleState.LOW)
+                word &= ~(1<<b);
         }
-        // -----------------------------------------------------
-        
-        tableCount = Integer.parseInt(br.readLine());
-        rowCounts=new int[tableCount];
-        
-        tablePins=new int[tableCount][];
-        tablePinType=new int[tableCount][];
-        tablePinMemoryIndex=new int[tableCount][][];
+        memory.write(address,word);
+    }
+    
+    public void getOutputs(long inValue[], long inKnown[], long outValue[], long outKnown[])
+    {
+        /*
+            Bit-parallel version of getOutputs, for combinational ICs only.
+            Every pin carries 64 independent input vectors, one per bit (lane), in 2 planes:
         
-        functionTable=new TruthValue[tableCount][][];
-        if(isStorageMatrix)
-            matrixIndices=new int[tableCount][][][];
-        else
-            arrayIndices=new int[tableCount][][][];
+                known = 1, value = 1    --->    HIGH
+                known = 1, value = 0    --->    LOW
+                known = 0               --->    NO_CONNECTION
         
-        for(int i=0; i<tableCount; i++)
+            A row of the function table becomes a mask of the lanes which satisfy it, and (as in
+            getOutputs) the last satisfied row decides the output: out = (out & ~match) | (row & match)
+        */
+        for(int i=0; i<pinCount; i++)
         {
-            String x[] = br.readLine().toUpperCase().split(",");
-            rowCounts[i]=Integer.parseInt(x[0]);
-            
-            tablePins[i]=new int[x.length-1];
-            tablePinType[i]=new int[x.length-1];
-            tablePinMemoryIndex[i]=new int[x.length-1][3];
-            
-            functionTable[i]=new TruthValue[rowCounts[i]][x.length-1];
-            if(isStorageMatrix)
-                matrixIndices[i]=new int[rowCounts[i]][x.length-1][3];
-            else
-                arrayIndices[i]=new int[rowCounts[i]][x.length-1][2];
-            
-            // Read Table Information
-            for(int j=1; j<x.length; j++) 
-            {
-                char y = x[j].charAt(0);
-                if(y=='M' || y=='A')                                // x[j]=AI(n:b) or AO(n:b) or MI(x;y:b) or MO(x;y:b)
-                {
-                    tablePins[i][j-1]=-1;
-                    char z = x[j].charAt(1);
-                    String g=x[j].substring(3,x[j].length()-1);     // remove brackets and I/O
-                    int q=g.indexOf(':');
-                    
-                    if(y=='A')
-                    {
-                        tablePinType[i][j-1]=(z=='I' ? 1 : 3);
-                        tablePinMemoryIndex[i][j-1][0]=Integer.parseInt(g.substring(0,q));
-                        tablePinMemoryIndex[i][j-1][1]=Integer.parseInt(g.substring(q+1));                        
-                    } else {
-                        tablePinType[i][j-1]=(z=='I' ? 2 : 4);
-                        int p=g.indexOf(';');
-                        tablePinMemoryIndex[i][j-1][0]=Integer.parseInt(g.substring(0,p));
-                        tablePinMemoryIndex[i][j-1][1]=Integer.parseInt(g.substring(p+1,q));
-                        tablePinMemoryIndex[i][j-1][2]=Integer.parseInt(g.substring(q+1));
-                    }
-                } else {
-                    tablePins[i][j-1]=Integer.parseInt(x[j]);
-                    tablePinType[i][j-1]=0;
-                    tablePinMemoryIndex[i][j-1]=null;
-                }
-            }
+            outValue[i] = (isInput[i] ? inValue[i] : 0L);
+            outKnown[i] = (isInput[i] ? inKnown[i] : 0L);
         }
         
-        // Read Table data (rows)
         for(int t=0; t<tableCount; t++)
         {
-            br.readLine();                  // blank line before each table data
             for(int r=0; r<rowCounts[t]; r++)
             {
-                String x[]=br.readLine().toUpperCase().split(",");
+                // Lanes in which the row-values of the input-columns are satisfied
+                long match = -1L;
+                for(int c=0; match!=0 && c<tablePins[t].length; c++)
+                {
+                    int pinIndex=tablePins[t][c]-1;
+                    if(tablePinType[t][c]!=0 || !isInput[pinIndex]) continue;
+                    
+                    TruthValue tv = functionTable[t][r][c];
+                    if(tv==TruthValue.HIGH)
+                        match &= inKnown[pinIndex] & inValue[pinIndex];
+                    else if(tv==TruthValue.LOW)
+                        match &= inKnown[pinIndex] & ~inValue[pinIndex];
+                }
+                if(match==0) continue;
+                
+                // Determine the output in those lanes
                 for(int c=0; c<tablePins[t].length; c++)
                 {
-                    char y = x[c].charAt(0);
-                    if(y=='X')
-                    {
-                        functionTable[t][r][c]=TruthValue.DONT_CARE;
-                    } else if(y=='0') {
-                        functionTable[t][r][c]=TruthValue.LOW;
-                    } else if(y=='1') {
-                        functionTable[t][r][c]=TruthValue.HIGH;
-                    } else if(y=='A' || y=='M' || y=='{') {
-                        functionTable[t][r][c]=TruthValue.MEMORY;
-                        // x[c] = A(n:b) or M(x,y:b) or {(pin)}
-                        String g=x[c].substring(2,x[c].length()-1);     // remove parenthesis
-                        if(y=='A' || y=='M')
-                        {
-                            if(y=='A') {
-                                int q = g.indexOf(':');
-                                arrayIndices[t][r][c][0]=Integer.parseInt(g.substring(0,q));
-                                arrayIndices[t][r][c][1]=Integer.parseInt(g.substring(q+1));
-                            } else {
-                                int p = g.indexOf(';');
-                                int q = g.indexOf(':');
-                                matrixIndices[t][r][c][0]=Integer.parseInt(g.substring(0,p));
-                                matrixIndices[t][r][c][1]=Integer.parseInt(g.substring(p+1,q));
-                                matrixIndices[t][r][c][2]=Integer.parseInt(g.substring(q+1));
-                            }
-                        } else {
-                            // pin reference
-                            arrayIndices[t][r][c][0]=-1;        // -1 indicates that next data is pin reference and not array index
-                            arrayIndices[t][r][c][1]=Integer.parseInt(g);
-                        }
+                    int pinIndex=tablePins[t][c]-1;
+                    if(tablePinType[t][c]!=0 || isInput[pinIndex]) continue;
+                    
+                    TruthValue tv = functionTable[t][r][c];
+                    long v, k;
+                    if(tv==TruthValue.HIGH) {
+                        v=-1L; k=-1L;
+                    } else if(tv==TruthValue.LOW) {
+                        v=0L; k=-1L;
+                    } else if(tv==TruthValue.MEMORY) {
+                        // pin reference (a combinational IC has no storage)
+                        int ref = ~cellReferences[t][r][c];
+                        v=inValue[ref]; k=inKnown[ref];
+                    } else {
+                        continue;
                     }
+                    
+                    outValue[pinIndex] = (outValue[pinIndex] & ~match) | (v & match);
+                    outKnown[pinIndex] = (outKnown[pinIndex] & ~match) | (k & match);
                 }
             }
         }
-        
-        br.close();
+    }
+    
+    public int getStorageLength()
+    {
+        // in longs (0 for an IC without storage): a RAM keeps its words, then the write in progress
+        if(storage!=null) return storage.length;
+        return(memory!=null && memory.isWritable() ? memory.getStateLength()+1 : 0);
+    }
+    
+    public void saveStorage(long dst[], int pos)
+    {
+        if(storage!=null) System.arraycopy(storage,0,dst,pos,storage.length);
+        if(memory!=null && memory.isWritable())
+        {
+            memory.save(dst,pos);
+            dst[pos+memory.getStateLength()]=writeAddress;
+        }
+    }
+    
+    public void restoreStorage(long src[], int pos)
+    {
+        if(storage!=null) System.arraycopy(src,pos,storage,0,storage.length);
+        if(memory!=null && memory.isWritable())
+        {
+            memory.restore(src,pos);
+            writeAddress=(int)src[pos+memory.getStateLength()];
+        }
+    }
+    
+    public long hashStorage(long h)
+    {
+        // Folds the contents of the internal storage into the 64-bit FNV-1a hash 'h'
+        if(storage!=null)
+        {
+            for(int i=0; i<storage.length; i++) h = (h ^ storage[i]) * 0x100000001b3L;
+        }
+        if(memory!=null) h = (memory.hash(h) ^ writeAddress) * 0x100000001b3L;
+        return h;
+    }
+    
+    public void setMemory(MemoryBank m)
+    {
+        // replaces the contents of a ROM or RAM part (see MemoryBank.load), on the thread which simulates it
+        memory=m;
+        writeAddress=-1;
+    }
+    
+    private boolean areEqual(TruthValue tv, HoleState hs)
+    {
+        if(tv==TruthValue.HIGH && hs==HoleState.HIGH) return true;
+        if(tv==TruthValue.LOW && hs==HoleState.LOW) return true;
+        if(tv==TruthValue.DONT_CARE) return true;
+        return false;
+    }
+    
+    private HoleState getStorageBit(int address)
+    {
+        return(((storage[address>>>6] >>> address) & 1L)==0 ? HoleState.LOW : HoleState.HIGH);
+    }
+    
+    private void setStorageBit(int address, boolean high)
+    {
+        // a long shift only uses the low 6 bits of 'address'
+        if(high)
+            storage[address>>>6] |= (1L << address);
+        else
+            storage[address>>>6] &= ~(1L << address);
+    }
+    
+    private HoleState getReferencedState(int ref, HoleState inputs[])
+    {
+        return(ref>=0 ? getStorageBit(ref) : inputs[~ref]);
+    }
+    
+    private void useDefinition()
+    {
+        icText = definition.getICText();
+        description = definition.getDescription();
+        pinCount = definition.getPinCount();
+        isInput = definition.getPinTypes();
+        icType = definition.getICType();
+        propagationDelay = definition.getPropagationDelay();
+        tableCount = definition.getTableCount();
+        rowCounts = definition.getRowCounts();
+        tablePins = definition.getTablePins();
+        tablePinType = definition.getTablePinTypes();
+        columnAddresses = definition.getColumnAddresses();
+        cellReferences = definition.getCellReferences();
+        functionTable = definition.getFunctionTable();
+        lookupInputPins = definition.getLookupInputPins();
+        lookupOutputPins = definition.getLookupOutputPins();
+        lookupTables = definition.getLookupTables();
+        decisionDiagrams = definition.getDecisionDiagrams();
+        
+        // only the storage is the IC's own
+        if(definition.getStorageSize()!=null) storage = new long[definition.getStorageLength()];
+        if(definition.isMemoryPart())
+        {
+            addressPins = definition.getAddressPins();
+            dataPins = definition.getDataPins();
+            memory = MemoryBank.create(definition);
+        }
         
         int factor=63*(firstPinHoleID>=516 && firstPinHoleID<=578 ? 1 : 3);
         holeIDs=new int[pinCount];
@@ -634,20 +634,30 @@ class IC extends CircuitComponent
     @Override
     public String getPropertiesAsString(ArrayList<CircuitComponent> components)
     {
-        // <super>|breadboard-index;pin-1-holeid;IC-name
+        // <super>|breadboard-index;pin-1-holeid;IC-name[;image-path]
         int bi = CircuitUtility.getIndexFromComponentReference(components, base);
-        return super.getPropertiesAsString(components)+"|"+bi+";"+firstPinHoleID+";"+icName;
+        String image = (memory==null ? null : memory.getImagePath());
+        return super.getPropertiesAsString(components)+"|"+bi+";"+firstPinHoleID+";"+icName+(image==null ? "" : ";"+image);
     }
     
     // Factory method
     public static IC parseFromString(String data, CircuitComponent list[])
     {
-        String x[] = data.substring(data.indexOf('|')+1).split(";");
+        String x[] = data.substring(data.indexOf('|')+1).split(";",4);
         
         Breadboard b = (Breadboard)list[Integer.parseInt(x[0])];
         int holeID = Integer.parseInt(x[1]);
         String n = x[2];
         
-        return(new IC(b, holeID, n));
+        IC ic = new IC(b, holeID, n);
+        if(x.length==4 && ic.isMemoryIC())
+        {
+            try {
+                ic.setMemory(MemoryBank.load(ic.getDefinition(),x[3]));
+            } catch(IOException e) {
+                Utility.alert("Could not load the image of a "+n+" ("+x[3]+"): "+e.getMessage());
+            }
+        }
+        return ic;
     }
 }
@@ -0,0 +1,596 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+
+class ICDefinition
+{
+    /*
+            IC DEFINITION
+            ------------------------------------------------
+            The parsed datasheet (resources/ic/<name>.icds) of a part: its pins, storage size and function
+            tables. A datasheet is parsed once, the first time the part is asked for, and the definition is
+            then shared by every IC of that part, which only keeps its own placement and storage:
+
+            40 x 7400       --->    1 parse, 1 set of tables, 40 placements
+
+            A definition is never modified after it is parsed, so the arrays it hands out are shared too
+            and must be treated as read-only. The registry is synchronized, as circuits are also loaded
+            from the simulation and fuzz threads.
+
+            LOOKUP TABLES
+            ------------------------------------------------
+            Walking a function table costs rows x columns per evaluation (see IC.getOutputs). So each table
+            of a combinational part is also compiled into a lookup table, indexed by its input pins packed
+            1 bit each (HIGH = 1), in the order of its columns:
+
+            7400, table 1 (pins 7,14,1,2 -> 3)      --->    16 entries of 1 output
+
+            An entry holds, for every output pin of the table, what the last satisfied row drives it to:
+            a HoleState ordinal, LOOKUP_PIN_REFERENCE+p (a copy of input pin p) or -1 (not driven). The
+            don't-cares are thereby expanded here, once, and an evaluation is a few shifts and an array read.
+            A table with more than MAX_LOOKUP_INPUTS inputs is compiled into a DecisionDiagram instead,
+            whose size follows the rows and not 2^inputs. As NO_CONNECTION only matches a don't-care, a
+            table is still walked when one of its inputs is not connected.
+
+            STORAGE
+            ------------------------------------------------
+            The storage of an IC is a long[] of getStorageLength() words, holding its memory words back to
+            back, wordSize bits each (a matrix row after row). Every memory reference of the tables is
+            resolved here, once, into a bit address:
+
+            A(n:b)      --->    n*wordSize + b
+            M(x;y:b)    --->    (x*columns + y)*wordSize + b            (M(x:b) = M(x;0:b))
+
+            so that reading or writing a bit is a shift and a mask (see IC.getStorageBit), and the whole
+            storage is saved or restored with one array copy.
+
+            MEMORY PARTS
+            ------------------------------------------------
+            A ROM or RAM part (ROM(w,n) or RAM(w,n) for n words of w <= 8 bits) has no function tables: a
+            table row per word would not scale past the 7489. Its datasheet names the role of its pins
+            instead, and the IC decodes its address pins arithmetically into an index of its MemoryBank:
+
+            62256, ADDRESS=10,9,...,1 (A0 first)     --->    address = sum of 2^b over the HIGH pins
+
+            The control pins are active-low. The data pins are outputs, driven while the part is selected
+            and its output enabled, and stored into the word while it is selected and written (RAM only).
+    */
+
+    public static final int MAX_LOOKUP_INPUTS = 12;
+    public static final int LOOKUP_PIN_REFERENCE = 3;
+
+    private static final HashMap<String,ICDefinition> registry = new HashMap<String,ICDefinition>();
+
+    private final String icName;
+    private String icText;
+    private String description;
+    private int pinCount;
+    private boolean isInput[];
+
+    private ICType icType;
+    private int propagationDelay;           // in nanoseconds, 0 if the datasheet gives none (see CompiledCircuit.runTimed)
+    private boolean isStorageMatrix;
+    private int wordSize;
+    private int storageSize[];              // { length } of an array, { rows, columns } of a matrix, null if combinational
+    private int storageWords;
+    private int storageLength;              // in longs (see STORAGE)
+
+    // ---------- ROM and RAM parts only (see MEMORY PARTS), 0-based pins ----------
+    private int addressPins[];              // A0 first
+    private int dataPins[];                 // D0 first
+    private int selectPin;                  // CE/CS
+    private int outputEnablePin;            // OE
+    private int writePin = -1;              // WE, -1 for a ROM
+    private int powerPins[];                // { VCC, GND }
+    // ------------------------------------------------------------------------------
+
+    private int tableCount;
+    private int rowCounts[];
+    private int tablePins[][];
+    private int tablePinType[][];           // 0=normal pin, 1=array, 2=matrix
+    private int columnAddresses[][];        // bit address of every memory column (pintype>0), -1 for a pin
+    private int cellReferences[][][];       // of every MEMORY cell: a bit address, or ~pin (0-based) for a pin reference
+    private TruthValue functionTable[][][];
+
+    // ---------- compiled (combinational parts only) ----------
+    private int lookupInputPins[][];        // per table: pin (0-based) of every index bit, null if the table is walked
+    private int lookupOutputPins[][];       // per table: pin (0-based) of every output in an entry
+    private byte lookupTables[][];          // per table: [index*outputs + output]
+    private DecisionDiagram decisionDiagrams[];     // per table: instead of a lookup table, for more than MAX_LOOKUP_INPUTS inputs
+    // ---------------------------------------------------------
+
+    public String getICName() { return icName; }
+    public String getDescription() { return description; }
+    public ICType getICType() { return icType; }
+    public int getPropagationDelay() { return propagationDelay; }
+    public String getICText() { return icText; }
+    public int getPinCount() { return pinCount; }
+    public boolean[] getPinTypes() { return isInput; }
+    public boolean isStorageMatrix() { return isStorageMatrix; }
+    public int getWordSize() { return wordSize; }
+    public int[] getStorageSize() { return storageSize; }
+    public int getStorageLength() { return storageLength; }
+    public int getStorageWords() { return storageWords; }
+    public boolean isMemoryPart() { return(icType==ICType.ROM || icType==ICType.RAM); }
+    public int[] getAddressPins() { return addressPins; }
+    public int[] getDataPins() { return dataPins; }
+    public int getSelectPin() { return selectPin; }
+    public int getOutputEnablePin() { return outputEnablePin; }
+    public int getWritePin() { return writePin; }
+    public int[] getPowerPins() { return powerPins; }
+    public int getTableCount() { return tableCount; }
+    public int[] getRowCounts() { return rowCounts; }
+    public int[][] getTablePins() { return tablePins; }
+    public int[][] getTablePinTypes() { return tablePinType; }
+    public int[][] getColumnAddresses() { return columnAddresses; }
+    public int[][][] getCellReferences() { return cellReferences; }
+    public TruthValue[][][] getFunctionTable() { return functionTable; }
+    public int[][] getLookupInputPins() { return lookupInputPins; }
+    public int[][] getLookupOutputPins() { return lookupOutputPins; }
+    public byte[][] getLookupTables() { return lookupTables; }
+    public DecisionDiagram[] getDecisionDiagrams() { return decisionDiagrams; }
+
+    private ICDefinition(String n)
+    {
+        icName=n;
+    }
+
+    public static ICDefinition get(String icName) throws IOException
+    {
+        // null if the datasheet is invalid (which has been reported), and then it is not kept
+        synchronized(registry)
+        {
+            ICDefinition d = registry.get(icName);
+            if(d==null)
+            {
+                d = new ICDefinition(icName);
+                if(!d.readData()) return null;
+                if(d.icType==ICType.COMBINATIONAL) d.compileLookupTables();
+                registry.put(icName,d);
+            }
+            return d;
+        }
+    }
+
+    private boolean readData() throws IOException
+    {
+        /*
+            -----------------------------
+                    FILE FORMAT (7408)
+            -----------------------------
+            ICName   = 7408
+            Description = Quad 2-input AND gate
+            ICText   = SN74LS08
+            PinCount = 14
+            IIOIIOIOIIOIII  (for pins 1 to 14) [I=input, O=output, VCC and GND are inputs]
+            C               (C=Combinational circuit, A/M=Flip-flop/memory, A(n) or M(x,y) = size of array or 2D matrix (memory storage)
+            TPD=9           (optional: typical propagation delay in nanoseconds, input to output)
+            TableCount=4    (4 tables for the 4 AND gates)
+            4,7,14,1,2,3    <rows,pins> (rows=4, table-columns=pins 7,14,1,2 and 3)
+            4,7,14,4,5,6
+            4,7,14,10,9,8
+            4,7,14,13,12,11
+
+            0,1,0,0,0       (Table-1: IF P7=0, P14=1, P1=0, P2=0, then P3=0)
+            0,1,0,1,0
+            0,1,1,0,0
+            0,1,1,1,1
+
+            ...             (similarly for Tables 2-4)
+
+            -----------------------------
+                    FILE FORMAT (6116)
+            -----------------------------
+            6116
+            16K (2K x 8) Static RAM
+            HM6116
+            24
+            IIIIIIIIOOOIOOOOOIIIIIII
+            RAM(8,2048)     (ROM(w,n) or RAM(w,n): n words of w bits, with no function tables)
+            TPD=150
+            ADDRESS=8,7,6,5,4,3,2,1,23,22,19        (A0 to A10)
+            DATA=9,10,11,13,14,15,16,17             (D0 to D7, output pins)
+            SELECT=18       (active-low chip select)
+            OUTPUT=20       (active-low output enable)
+            WRITE=21        (active-low write enable, RAM only)
+            POWER=24,12     (VCC, GND)
+        */
+
+        InputStream file = ICDefinition.class.getResourceAsStream("resources/ic/" + icName + ".icds");
+        BufferedReader br = new BufferedReader(new InputStreamReader(file));
+
+        String icn = br.readLine();
+        if(!icn.equalsIgnoreCase(icName))
+        {
+            Utility.alert("Invalid chip("+icName+") datasheet: IC-Name does not match.");
+            br.close();
+            return false;
+        }
+
+        description = br.readLine();
+        icText = br.readLine();
+        pinCount = Integer.parseInt(br.readLine());
+        String ioString = br.readLine().toLowerCase();
+
+        if(ioString.length()!=pinCount)
+        {
+            Utility.alert("Invalid chip("+icName+") datasheet: Pin-count does not match.");
+            br.close();
+            return false;
+        }
+
+        // ----------- Computation -----------------------------
+        isInput = new boolean[pinCount];
+        for(int i=0; i<pinCount; i++) isInput[i]=(ioString.charAt(i)=='i');
+        // -----------------------------------------------------
+
+        // ----------- Determine IC-Type -----------------------
+        String temp = br.readLine().trim().toLowerCase();        // C or A(w,n) or M(w,x,y), where C=combinational, A=array, M=matrix, w=Word-size in bits, n=length of array, (x,y) are matrix dimensions
+        if(temp.startsWith("rom(") || temp.startsWith("ram("))
+        {
+            icType=(temp.charAt(1)=='o' ? ICType.ROM : ICType.RAM);
+            String x[] = temp.substring(4,temp.length()-1).split(",");
+            if(temp.charAt(temp.length()-1)!=')' || x.length!=2)
+            {
+                Utility.alert("Invalid chip data.");
+                br.close();
+                return false;
+            }
+            wordSize=Integer.parseInt(x[0].trim());
+            storageWords=Integer.parseInt(x[1].trim());
+            if(wordSize<1 || wordSize>8)
+            {
+                Utility.alert("Chip Word-Size unsupported.");
+                br.close();
+                return false;
+            }
+        } else if(temp.charAt(0)=='c') {
+            icType=ICType.COMBINATIONAL;
+        } else {
+            icType=ICType.MEMORY;
+            isStorageMatrix=(temp.charAt(0)=='m');
+            if(temp.charAt(1)!='(' || temp.charAt(temp.length()-1)!=')')
+            {
+                Utility.alert("Invalid chip data.");
+                br.close();
+                return false;
+            } else {
+                String x[] = temp.substring(2,temp.length()-1).split(",");
+                if((isStorageMatrix && x.length!=3 && x.length!=2)||(!isStorageMatrix && x.length!=2))
+                {
+                    Utility.alert("Invalid chip data.");
+                    br.close();
+                    return false;
+                } else {
+                    wordSize=Integer.parseInt(x[0]);
+                    if(wordSize>32)
+                    {
+                        Utility.alert("Chip Word-Size unsupported.");
+                        br.close();
+                        return false;
+                    }
+
+                    if(isStorageMatrix)
+                        storageSize = new int[] { Integer.parseInt(x[1]), (x.length==3 ? Integer.parseInt(x[2]) : 1) };     // M(w,x) = M(w,x,1)
+                    else
+                        storageSize = new int[] { Integer.parseInt(x[1]) };
+
+                    storageWords = 1;
+                    for(int i=0; i<storageSize.length; i++) storageWords *= storageSize[i];
+                    storageLength = (int)(((long)storageWords*wordSize+63)>>>6);
+                }
+            }
+        }
+        // -----------------------------------------------------
+
+        // ----------- Propagation delay (optional) ------------
+        temp = br.readLine().trim();
+        if(temp.toLowerCase().startsWith("tpd="))
+        {
+            propagationDelay = Integer.parseInt(temp.substring(4).trim());
+            temp = br.readLine().trim();
+        }
+        // -----------------------------------------------------
+
+        if(isMemoryPart())
+        {
+            boolean valid = readMemoryPins(br,temp);
+            br.close();
+            return valid;
+        }
+
+        tableCount = Integer.parseInt(temp);
+        rowCounts=new int[tableCount];
+
+        tablePins=new int[tableCount][];
+        tablePinType=new int[tableCount][];
+        columnAddresses=new int[tableCount][];
+
+        functionTable=new TruthValue[tableCount][][];
+        cellReferences=new int[tableCount][][];
+
+        for(int i=0; i<tableCount; i++)
+        {
+            String x[] = br.readLine().toUpperCase().split(",");
+            rowCounts[i]=Integer.parseInt(x[0]);
+
+            tablePins[i]=new int[x.length-1];
+            tablePinType[i]=new int[x.length-1];
+            columnAddresses[i]=new int[x.length-1];
+
+            functionTable[i]=new TruthValue[rowCounts[i]][x.length-1];
+            cellReferences[i]=new int[rowCounts[i]][x.length-1];
+
+            // Read Table Information
+            for(int j=1; j<x.length; j++)
+            {
+                char y = x[j].charAt(0);
+                if(y=='M' || y=='A')                                // x[j]=AI(n:b) or AO(n:b) or MI(x;y:b) or MO(x;y:b)
+                {
+                    tablePins[i][j-1]=-1;
+                    char z = x[j].charAt(1);
+                    String g=x[j].substring(3,x[j].length()-1);     // remove brackets and I/O
+
+                    if(y=='A')
+                        tablePinType[i][j-1]=(z=='I' ? 1 : 3);
+                    else
+                        tablePinType[i][j-1]=(z=='I' ? 2 : 4);
+
+                    columnAddresses[i][j-1]=getBitAddress(g);
+                    if(columnAddresses[i][j-1]<0)
+                    {
+                        Utility.alert("Invalid chip("+icName+") datasheet: memory reference out of range.");
+                        br.close();
+                        return false;
+                    }
+                } else {
+                    tablePins[i][j-1]=Integer.parseInt(x[j]);
+                    tablePinType[i][j-1]=0;
+                    columnAddresses[i][j-1]=-1;
+                }
+            }
+        }
+
+        // Read Table data (rows)
+        for(int t=0; t<tableCount; t++)
+        {
+            br.readLine();                  // blank line before each table data
+            for(int r=0; r<rowCounts[t]; r++)
+            {
+                String x[]=br.readLine().toUpperCase().split(",");
+                for(int c=0; c<tablePins[t].length; c++)
+                {
+                    char y = x[c].charAt(0);
+                    if(y=='X')
+                    {
+                        functionTable[t][r][c]=TruthValue.DONT_CARE;
+                    } else if(y=='0') {
+                        functionTable[t][r][c]=TruthValue.LOW;
+                    } else if(y=='1') {
+                        functionTable[t][r][c]=TruthValue.HIGH;
+                    } else if(y=='A' || y=='M' || y=='{') {
+                        functionTable[t][r][c]=TruthValue.MEMORY;
+                        // x[c] = A(n:b) or M(x;y:b) or {(pin)}
+                        int ref;
+                        boolean valid;
+                        if(y=='A' || y=='M')
+                        {
+                            ref=getBitAddress(x[c].substring(2,x[c].length()-1));     // remove parenthesis
+                            valid=(ref>=0);
+                        } else {
+                            // pin reference: ~(0-based pin)
+                            int pin=Integer.parseInt(x[c].substring(2,x[c].length()-2));
+                            ref=~(pin-1);
+                            valid=(pin>=1 && pin<=pinCount);
+                        }
+                        cellReferences[t][r][c]=ref;
+                        if(!valid)
+                        {
+                            Utility.alert("Invalid chip("+icName+") datasheet: reference out of range.");
+                            br.close();
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+
+        br.close();
+        return true;
+    }
+
+    private boolean readMemoryPins(BufferedReader br, String line) throws IOException
+    {
+        // 'line' = the first line after the IC-type (and TPD), then up to the end of the file
+        tableCount=0;
+        rowCounts=new int[0];
+        tablePins=new int[0][];
+        tablePinType=new int[0][];
+        columnAddresses=new int[0][];
+        cellReferences=new int[0][][];
+        functionTable=new TruthValue[0][][];
+
+        int select[]=null, output[]=null, write[]=null;
+        for(; line!=null; line=br.readLine())
+        {
+            line=line.trim().toUpperCase();
+            int k=line.indexOf('=');
+            if(k<0) continue;
+
+            String x[] = line.substring(k+1).split(",");
+            int pins[] = new int[x.length];
+            for(int i=0; i<x.length; i++)
+            {
+                pins[i]=Integer.parseInt(x[i].trim())-1;
+                if(pins[i]<0 || pins[i]>=pinCount)
+                {
+                    Utility.alert("Invalid chip("+icName+") datasheet: pin out of range.");
+                    return false;
+                }
+            }
+
+            String key=line.substring(0,k).trim();
+            if(key.equals("ADDRESS"))
+                addressPins=pins;
+            else if(key.equals("DATA"))
+                dataPins=pins;
+            else if(key.equals("SELECT"))
+                select=pins;
+            else if(key.equals("OUTPUT"))
+                output=pins;
+            else if(key.equals("WRITE"))
+                write=pins;
+            else if(key.equals("POWER"))
+                powerPins=pins;
+        }
+
+        if(addressPins==null || dataPins==null || select==null || select.length!=1 || output==null || output.length!=1
+                || powerPins==null || powerPins.length!=2 || (write!=null && write.length!=1) || ((write!=null)!=(icType==ICType.RAM)))
+        {
+            Utility.alert("Invalid chip("+icName+") datasheet: missing or invalid memory pins.");
+            return false;
+        }
+        if(addressPins.length>30 || (1<<addressPins.length)!=storageWords || dataPins.length!=wordSize)
+        {
+            Utility.alert("Invalid chip("+icName+") datasheet: the address and data pins do not match the memory size.");
+            return false;
+        }
+
+        selectPin=select[0];
+        outputEnablePin=output[0];
+        if(write!=null) writePin=write[0];
+
+        // only the data pins are outputs
+        for(int i=0; i<pinCount; i++)
+        {
+            boolean data=false;
+            for(int b=0; b<dataPins.length; b++) data=data || (dataPins[b]==i);
+            if(data==isInput[i])
+            {
+                Utility.alert("Invalid chip("+icName+") datasheet: only the data pins may be outputs.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getBitAddress(String g)
+    {
+        // g = n:b (array), x;y:b (matrix) or x:b (= x;0:b), -1 if it is not in the storage
+        int q=g.indexOf(':'), p=g.indexOf(';');
+        if(storageSize==null || q<0) return -1;
+
+        int word=Integer.parseInt(g.substring(0,(p<0 ? q : p)));
+        int bit=Integer.parseInt(g.substring(q+1));
+        if(p>=0)
+        {
+            int column=Integer.parseInt(g.substring(p+1,q));
+            if(storageSize.length<2 || column<0 || column>=storageSize[1]) return -1;
+            word=word*storageSize[1]+column;
+        }
+
+        if(word<0 || word>=storageWords || bit<0 || bit>=wordSize) return -1;
+        return word*wordSize+bit;
+    }
+
+    private void compileLookupTables()
+    {
+        lookupInputPins=new int[tableCount][];
+        lookupOutputPins=new int[tableCount][];
+        lookupTables=new byte[tableCount][];
+        decisionDiagrams=new DecisionDiagram[tableCount];
+        for(int t=0; t<tableCount; t++) compileLookupTable(t);
+    }
+
+    private void compileLookupTable(int t)
+    {
+        int columns = tablePins[t].length;
+        int inputColumns[] = new int[columns], outputColumns[] = new int[columns];
+        int ni=0, no=0;
+        for(int c=0; c<columns; c++)
+        {
+            if(tablePinType[t][c]!=0) return;               // memory column
+            if(isInput[tablePins[t][c]-1])
+                inputColumns[ni++]=c;
+            else
+                outputColumns[no++]=c;
+        }
+        // what every row drives its outputs to
+        byte drive[][] = new byte[rowCounts[t]][no];
+        for(int r=0; r<rowCounts[t]; r++)
+        {
+            for(int i=0; i<ni; i++)
+            {
+                // reported as invalid by IC.walkTable
+                if(functionTable[t][r][inputColumns[i]]==TruthValue.MEMORY) return;
+            }
+            for(int o=0; o<no; o++)
+            {
+                int c = outputColumns[o];
+                TruthValue tv = functionTable[t][r][c];
+                if(tv==TruthValue.HIGH) {
+                    drive[r][o]=(byte)HoleState.HIGH.ordinal();
+                } else if(tv==TruthValue.LOW) {
+                    drive[r][o]=(byte)HoleState.LOW.ordinal();
+                } else if(tv==TruthValue.MEMORY) {
+                    if(cellReferences[t][r][c]>=0) return;      // storage reference
+                    drive[r][o]=(byte)(LOOKUP_PIN_REFERENCE+~cellReferences[t][r][c]);
+                } else {
+                    drive[r][o]=-1;
+                }
+            }
+        }
+
+        int inputPins[] = new int[ni], outputPins[] = new int[no];
+        for(int i=0; i<ni; i++) inputPins[i]=tablePins[t][inputColumns[i]]-1;
+        for(int o=0; o<no; o++) outputPins[o]=tablePins[t][outputColumns[o]]-1;
+
+        if(ni>MAX_LOOKUP_INPUTS)
+        {
+            TruthValue conditions[][] = new TruthValue[rowCounts[t]][ni];
+            for(int r=0; r<rowCounts[t]; r++)
+            {
+                for(int i=0; i<ni; i++) conditions[r][i]=functionTable[t][r][inputColumns[i]];
+            }
+            decisionDiagrams[t] = new DecisionDiagram(inputPins,outputPins,conditions,drive);
+            return;
+        }
+
+        byte lut[] = new byte[(1<<ni)*no];
+        Arrays.fill(lut,(byte)-1);
+        for(int index=0; index<(1<<ni); index++)
+        {
+            for(int r=0; r<rowCounts[t]; r++)
+            {
+                boolean f=true;
+                for(int i=0; f && i<ni; i++)
+                {
+                    TruthValue tv = functionTable[t][r][inputColumns[i]];
+                    boolean high = ((index>>i)&1)!=0;
+                    if(tv==TruthValue.HIGH)
+                        f=high;
+                    else if(tv==TruthValue.LOW)
+                        f=!high;
+                }
+                if(!f) continue;
+
+                // a later satisfied row overrides the outputs it drives
+                for(int o=0; o<no; o++)
+                {
+                    if(drive[r][o]>=0) lut[index*no+o]=drive[r][o];
+                }
+            }
+        }
+
+        lookupInputPins[t]=inputPins;
+        lookupOutputPins[t]=outputPins;
+        lookupTables[t]=lut;
+    }
+}
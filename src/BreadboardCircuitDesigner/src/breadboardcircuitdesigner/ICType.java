@@ -7,5 +7,5 @@ package breadboardcircuitdesigner;
 
 enum ICType 
 {
-    COMBINATIONAL, MEMORY
+    COMBINATIONAL, MEMORY, ROM, RAM
 }
@@ -0,0 +1,322 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+
+class LogicAnalyzerPanel extends JPanel
+{
+    /*
+            LOGIC ANALYZER
+            ------------------------------------------------
+            Plots the probes of a WaveformRecorder over simulated time, one row per probe. Every pixel
+            column is one slice of the visible time span (see WaveformRecorder.decimate): a probe which was
+            in one state during the slice is drawn as a level, one which switched as a bar from its lowest to
+            its highest state (min/max decimation). A repaint therefore costs the same for 10^3 or 10^7
+            recorded changes.
+
+            mouse wheel             --->    zoom in/out around the pointer
+            drag / scroll bar       --->    scroll
+            Fit                     --->    show the whole capture
+
+            While the view shows the end of the capture, it follows the recording as it grows.
+    */
+
+    private static final long serialVersionUID = 1L;
+    private static final int ROW_HEIGHT = 32;
+    private static final int LABEL_WIDTH = 80;
+    private static final int RULER_HEIGHT = 20;
+    private static final int MIN_SPAN = 16;                 // nanoseconds across the plot
+    private static final int SCROLL_UNITS = 10000;
+    private static final int REFRESH_MILLIS = 250;
+    private static final Font LABEL_FONT = new Font("Lucida Console", Font.PLAIN, 10);
+
+    private final WaveformRecorder recorder;
+    private final int holeIDs[];
+
+    private long viewStart, viewSpan;
+    private boolean following = true;
+    private long shownEndTime = -1;
+    private byte masks[] = new byte[0];
+
+    private final Plot plot = new Plot();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.HORIZONTAL,0,SCROLL_UNITS,0,SCROLL_UNITS);
+    private final JLabel lblStatus = new JLabel();
+    private final Timer refreshTimer;
+    private boolean updatingScrollBar;
+
+    LogicAnalyzerPanel(WaveformRecorder r)
+    {
+        super(new BorderLayout());
+        recorder = r;
+        holeIDs = r.getHoleIDs();
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolBar.add(createButton("Zoom In", new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { zoom(0.5, 0.5); }
+        }));
+        toolBar.add(createButton("Zoom Out", new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { zoom(2.0, 0.5); }
+        }));
+        toolBar.add(createButton("Fit", new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { fit(); }
+        }));
+        toolBar.add(lblStatus);
+
+        scrollBar.addAdjustmentListener(new AdjustmentListener() {
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent e) { scrollBarMoved(); }
+        });
+
+        add(toolBar, BorderLayout.NORTH);
+        add(plot, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.SOUTH);
+        plot.setPreferredSize(new Dimension(800, RULER_HEIGHT+ROW_HEIGHT*holeIDs.length+8));
+
+        // follows the recording while it grows
+        refreshTimer = new Timer(REFRESH_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { refresh(); }
+        });
+        fit();
+    }
+
+    private static JButton createButton(String text, ActionListener a)
+    {
+        JButton b = new JButton(text);
+        b.addActionListener(a);
+        return b;
+    }
+
+    @Override
+    public void addNotify()
+    {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify()
+    {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    // ------------------------------------------
+    // View
+    // ------------------------------------------
+    private void fit()
+    {
+        viewStart = recorder.getStartTime();
+        viewSpan = Math.max(MIN_SPAN, recorder.getEndTime()-viewStart);
+        following = true;
+        viewChanged();
+    }
+
+    private void zoom(double factor, double anchor)
+    {
+        // 'anchor' = where the time which stays in place is, as a fraction of the plot width
+        long span = (long)Math.max(MIN_SPAN, Math.min(viewSpan*factor, 4e18));
+        long t = viewStart + (long)(viewSpan*anchor);
+        viewStart = t - (long)(span*anchor);
+        viewSpan = span;
+        following = false;
+        viewChanged();
+    }
+
+    private void scrollBy(long nanos)
+    {
+        viewStart += nanos;
+        following = false;
+        viewChanged();
+    }
+
+    private void refresh()
+    {
+        long start = recorder.getStartTime(), end = recorder.getEndTime();
+        if(end==shownEndTime) return;
+
+        if(following && viewStart+viewSpan<end)
+        {
+            if(viewStart<=start)
+            {
+                // the whole capture is shown: keep it so
+                viewStart = start;
+                viewSpan = Math.max(MIN_SPAN, end-start);
+            } else {
+                viewStart = end-viewSpan;
+            }
+        }
+        viewChanged();
+    }
+
+    private void viewChanged()
+    {
+        long start = recorder.getStartTime(), end = recorder.getEndTime();
+        long total = Math.max(end-start, 1);
+
+        // the scroll bar covers the capture, and the view within it
+        updatingScrollBar = true;
+        int extent = (int)Math.max(1, Math.min(SCROLL_UNITS, (double)viewSpan/total*SCROLL_UNITS));
+        int value = (int)Math.max(0, Math.min(SCROLL_UNITS-extent, (double)(viewStart-start)/total*SCROLL_UNITS));
+        scrollBar.setValues(value, extent, 0, SCROLL_UNITS);
+        updatingScrollBar = false;
+
+        if(viewStart+viewSpan>=end) following = true;
+        shownEndTime = end;
+
+        lblStatus.setText(String.format("  %d changes recorded (%d dropped),  %s per pixel",
+                recorder.getChangeCount(), recorder.getDroppedChangeCount(),
+                formatTime(viewSpan/Math.max(1, plot.getWidth()-LABEL_WIDTH))));
+        plot.repaint();
+    }
+
+    private void scrollBarMoved()
+    {
+        if(updatingScrollBar) return;
+
+        long start = recorder.getStartTime(), end = recorder.getEndTime();
+        viewStart = start + (long)((double)scrollBar.getValue()/SCROLL_UNITS*Math.max(end-start, 1));
+        following = false;
+        viewChanged();
+    }
+
+    private static String formatTime(long nanos)
+    {
+        if(nanos>=1000000000L) return String.format("%.3f s", nanos/1e9);
+        if(nanos>=1000000L) return String.format("%.3f ms", nanos/1e6);
+        if(nanos>=1000L) return String.format("%.3f us", nanos/1e3);
+        return nanos+" ns";
+    }
+
+    // ------------------------------------------
+    // Plot
+    // ------------------------------------------
+    private class Plot extends JComponent implements MouseListener, MouseMotionListener, MouseWheelListener
+    {
+        private static final long serialVersionUID = 1L;
+        private int dragX;
+
+        Plot()
+        {
+            addMouseListener(this);
+            addMouseMotionListener(this);
+            addMouseWheelListener(this);
+            setOpaque(true);
+        }
+
+        @Override
+        public void paintComponent(Graphics g)
+        {
+            int width = getWidth(), height = getHeight();
+            int columns = width-LABEL_WIDTH;
+
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            if(columns<=0) return;
+
+            if(masks.length<holeIDs.length*columns) masks = new byte[holeIDs.length*columns];
+            recorder.decimate(viewStart, viewStart+viewSpan, columns, masks);
+
+            g.setFont(LABEL_FONT);
+            paintRuler(g, columns);
+
+            for(int p=0; p<holeIDs.length; p++)
+            {
+                int top = RULER_HEIGHT + p*ROW_HEIGHT;
+                g.setColor(Color.LIGHT_GRAY);
+                g.drawString("hole "+holeIDs[p], 4, top+ROW_HEIGHT/2+4);
+                g.setColor(Color.DARK_GRAY);
+                g.drawLine(LABEL_WIDTH, top+ROW_HEIGHT-1, width, top+ROW_HEIGHT-1);
+
+                paintRow(g, p, columns, top);
+            }
+        }
+
+        private void paintRuler(Graphics g, int columns)
+        {
+            g.setColor(Color.GRAY);
+            g.drawLine(LABEL_WIDTH, RULER_HEIGHT-1, LABEL_WIDTH+columns, RULER_HEIGHT-1);
+            for(int i=0; i<5; i++)
+            {
+                int x = LABEL_WIDTH + columns*i/5;
+                g.drawLine(x, RULER_HEIGHT-5, x, RULER_HEIGHT-1);
+                g.drawString(formatTime(viewStart + viewSpan*i/5), x+2, RULER_HEIGHT-6);
+            }
+        }
+
+        private void paintRow(Graphics g, int p, int columns, int top)
+        {
+            // the y of every state: HIGH on top, LOW at the bottom, NO_CONNECTION in between
+            int yHigh = top+4, yLow = top+ROW_HEIGHT-6, yFloating = (yHigh+yLow)/2;
+            int previousY = -1;
+
+            for(int c=0; c<columns; c++)
+            {
+                int m = masks[p*columns+c];
+                int x = LABEL_WIDTH+c;
+                if(m==0)
+                {
+                    previousY = -1;             // nothing recorded here
+                    continue;
+                }
+
+                int maxY = ((m & (1<<HoleState.HIGH.ordinal()))!=0 ? yHigh : ((m & (1<<HoleState.NO_CONNECTION.ordinal()))!=0 ? yFloating : yLow));
+                int minY = ((m & (1<<HoleState.LOW.ordinal()))!=0 ? yLow : ((m & (1<<HoleState.NO_CONNECTION.ordinal()))!=0 ? yFloating : yHigh));
+                boolean floating = (m==(1<<HoleState.NO_CONNECTION.ordinal()));
+
+                g.setColor(floating ? Color.ORANGE : Color.GREEN);
+                if(maxY!=minY)
+                {
+                    // switched during this column: a bar from the lowest to the highest state
+                    g.drawLine(x, maxY, x, minY);
+                    previousY = -1;
+                } else {
+                    if(previousY>=0 && previousY!=maxY) g.drawLine(x, previousY, x, maxY);
+                    g.drawLine(x, maxY, x, maxY);
+                    previousY = maxY;
+                }
+            }
+        }
+
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e)
+        {
+            double anchor = Math.max(0, Math.min(1, (double)(e.getX()-LABEL_WIDTH)/Math.max(1, getWidth()-LABEL_WIDTH)));
+            zoom(e.getWheelRotation()<0 ? 0.8 : 1.25, anchor);
+        }
+
+        @Override
+        public void mousePressed(MouseEvent e)
+        {
+            dragX = e.getX();
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e)
+        {
+            int columns = Math.max(1, getWidth()-LABEL_WIDTH);
+            scrollBy((long)((double)(dragX-e.getX())*viewSpan/columns));
+            dragX = e.getX();
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e) {}
+        @Override
+        public void mouseReleased(MouseEvent e) {}
+        @Override
+        public void mouseEntered(MouseEvent e) {}
+        @Override
+        public void mouseExited(MouseEvent e) {}
+        @Override
+        public void mouseMoved(MouseEvent e) {}
+    }
+}
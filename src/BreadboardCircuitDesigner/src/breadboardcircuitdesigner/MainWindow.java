@@ -14,8 +14,11 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import javax.imageio.ImageIO;
 
@@ -25,16 +28,17 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
     // ----------- menu related variable declarations -------------
     private MenuActions menuActions;
     private JMenuBar menuBar;
-    private JMenu mnuFile, mnuEdit, mnuInsert, mnuView, mnuHelp;
+    private JMenu mnuFile, mnuEdit, mnuInsert, mnuView, mnuSimulate, mnuHelp;
     
     private JMenuItem mnuFileNew, mnuFileOpen, mnuFileClose, mnuFileSave, mnuFileSaveAs, mnuFileExport, mnuFileExit;
     
     private JMenuItem mnuEditDelete, mnuEditSetDimensions, mnuEditSetWireColor;
-    private JMenuItem mnuEditWireMode, mnuEditSetIdleMode;
+    private JMenuItem mnuEditWireMode, mnuEditSetIdleMode, mnuEditLoadMemoryImage;
     
     private JMenuItem mnuInsertPowerSupply, mnuInsertBreadboard, mnuInsertDIP, mnuInsertResistor, mnuInsertLED, mnuInsert7LED;
     
     private JMenuItem mnuViewHoleStatus;
+    private JMenuItem mnuSimulateRun, mnuSimulateStop, mnuSimulateRewind, mnuSimulateTimed, mnuSimulateClockPolicy, mnuSimulateClockStatistics, mnuSimulateRecord, mnuSimulateExportVCD, mnuSimulateLogicAnalyzer;
     private JMenuItem mnuHelpAbout;
     // ------------------------------------------------------------
     
@@ -49,6 +53,7 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
     protected static int circuitHeight = 768;
     
     private boolean holeStatusVisible = false;
+    private boolean timedMode = false;              // simulate with the propagation delays of the ICs
     private boolean deleteMode = false;
     public static int breadboardCounter=0, powerSupplyCounter=0;
     private static final Color CIRCUIT_BACKGROUND_COLOR = Color.LIGHT_GRAY;
@@ -58,8 +63,6 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
     boolean circuitChanged=false;
     // -----------------------------------
     
-    private static boolean simulationMode=false;
-    
     // ------------ Wire --------------
     private boolean wireEditingMode=false;
     private Color currentWireColor = Color.BLUE;
@@ -93,8 +96,8 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
     private boolean floatingMode=false;
     
     // ------------- Power Supply -------------
-    double powerSupplyFrequency;
-    javax.swing.Timer clockTimer=null;
+    ClockService clockService=null;             // runs the clocks of all the power supplies
+    ClockOverrunPolicy clockOverrunPolicy=ClockOverrunPolicy.SKIP;
     // ----------------------------------------
     
     // ------------- Dragging ---------------
@@ -307,6 +310,10 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         mnuView.setMnemonic(KeyEvent.VK_V);
         menuBar.add(mnuView);
         
+        mnuSimulate = new JMenu("Simulate");
+        mnuSimulate.setMnemonic(KeyEvent.VK_S);
+        menuBar.add(mnuSimulate);
+        
         mnuHelp = new JMenu("Help");
         mnuHelp.setMnemonic(KeyEvent.VK_H);
         menuBar.add(mnuHelp);
@@ -361,6 +368,10 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         mnuEdit.add(mnuEditSetWireColor);
         mnuEditSetWireColor.addActionListener(menuActions);
         
+        mnuEditLoadMemoryImage = new JMenuItem("Load Memory Image...", KeyEvent.VK_I);
+        mnuEdit.add(mnuEditLoadMemoryImage);
+        mnuEditLoadMemoryImage.addActionListener(menuActions);
+        
         mnuEdit.addSeparator();
         
         mnuEditWireMode = new JMenuItem("Start wire editing mode", KeyEvent.VK_M);
@@ -426,6 +437,53 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         
         // --------------------------
         
+        // create the simulate menu items
+        mnuSimulateRun = new JMenuItem("Run Cycles...", KeyEvent.VK_R);
+        mnuSimulateRun.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0));
+        mnuSimulate.add(mnuSimulateRun);
+        mnuSimulateRun.addActionListener(menuActions);
+        
+        mnuSimulateStop = new JMenuItem("Stop Run", KeyEvent.VK_S);
+        mnuSimulateStop.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F5, ActionEvent.SHIFT_MASK));
+        mnuSimulate.add(mnuSimulateStop);
+        mnuSimulateStop.addActionListener(menuActions);
+        
+        mnuSimulateRewind = new JMenuItem("Rewind to Cycle...", KeyEvent.VK_N);
+        mnuSimulateRewind.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F7, 0));
+        mnuSimulate.add(mnuSimulateRewind);
+        mnuSimulateRewind.addActionListener(menuActions);
+        
+        mnuSimulate.addSeparator();
+        
+        mnuSimulateTimed = new JMenuItem("Use propagation delays", KeyEvent.VK_P);
+        mnuSimulate.add(mnuSimulateTimed);
+        mnuSimulateTimed.addActionListener(menuActions);
+        
+        mnuSimulateClockPolicy = new JMenuItem("Keep missed clock ticks", KeyEvent.VK_K);
+        mnuSimulate.add(mnuSimulateClockPolicy);
+        mnuSimulateClockPolicy.addActionListener(menuActions);
+        
+        mnuSimulateClockStatistics = new JMenuItem("Clock statistics", KeyEvent.VK_C);
+        mnuSimulate.add(mnuSimulateClockStatistics);
+        mnuSimulateClockStatistics.addActionListener(menuActions);
+        
+        mnuSimulate.addSeparator();
+        
+        mnuSimulateRecord = new JMenuItem("Record Waveforms...", KeyEvent.VK_W);
+        mnuSimulate.add(mnuSimulateRecord);
+        mnuSimulateRecord.addActionListener(menuActions);
+        
+        mnuSimulateExportVCD = new JMenuItem("Export Waveforms (VCD)...", KeyEvent.VK_E);
+        mnuSimulate.add(mnuSimulateExportVCD);
+        mnuSimulateExportVCD.addActionListener(menuActions);
+        
+        mnuSimulateLogicAnalyzer = new JMenuItem("Logic Analyzer...", KeyEvent.VK_L);
+        mnuSimulateLogicAnalyzer.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F6, 0));
+        mnuSimulate.add(mnuSimulateLogicAnalyzer);
+        mnuSimulateLogicAnalyzer.addActionListener(menuActions);
+        
+        // --------------------------
+        
         // create the help menu items
         mnuHelpAbout = new JMenuItem("About...", KeyEvent.VK_A);
         mnuHelpAbout.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F1, 0));
@@ -461,6 +519,11 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         
         private ArrayList<CircuitComponent> components;
         private ArrayList<Wire> wires;
+        
+        private SimulationWorker simulator;
+        private SimulationSnapshot appliedSnapshot;
+        private long reportedRun[], reportedRewind[];
+        private WaveformRecorder recorder;
                 
         public DrawingPane()
         {
@@ -468,6 +531,24 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             floatingMode = false;
             components = new ArrayList<CircuitComponent>();
             wires = new ArrayList<Wire>();
+            
+            // the simulation runs on a thread of its own: repaint whenever it publishes a snapshot
+            simulator = new SimulationWorker(new Runnable() {
+                @Override
+                public void run() {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            setTitle();
+                            repaint();
+                            reportRun();
+                            reportRewind();
+                        }
+                    });
+                }
+            });
+            simulator.setTimedMode(timedMode);
+            simulator.start();
         }
         
         public void setData(ArrayList<CircuitComponent> c, ArrayList<Wire> w)
@@ -475,6 +556,7 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             components = c;
             wires = w;
             
+            simulator.reset();
             simulateCircuit();
             revalidate();
             repaint();
@@ -483,17 +565,88 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         
         private void simulateCircuit()
         {
-            simulationMode=true;
-            setTitle();
-            Thread.yield();
-            Simulation.simulateCircuit(components,wires);
-            simulationMode=false;
+            simulator.requestSimulation(components,wires);
             setTitle();
-            Thread.yield();
+        }
+        
+        public void runCycles(int cycles, int stopHoleID)
+        {
+            // turbo mode: the result is shown once, at the end (see reportRun)
+            simulator.requestSimulation(components,wires);
+            simulator.requestRun(cycles,stopHoleID,HoleState.HIGH);
+        }
+        
+        private void reportRun()
+        {
+            long run[] = simulator.getLastRun();
+            if(run==null || run==reportedRun) return;
+            
+            reportedRun=run;
+            long ms = run[1]/1000000;
+            long cyclesPerSecond = (long)(run[0]*1e9/Math.max(run[1],1));
+            Utility.alert("Ran "+run[0]+" cycles in "+ms+" ms ("+cyclesPerSecond+" cycles/second).");
+        }
+        
+        public void rewind(long toCycle)
+        {
+            // the clocks are stopped, so that the circuit stays at that cycle
+            stopClock();
+            simulator.requestSimulation(components,wires);
+            simulator.requestRewind(toCycle);
+        }
+        
+        private void reportRewind()
+        {
+            long r[] = simulator.getLastRewind();
+            if(r==null || r==reportedRewind) return;
+            
+            reportedRewind=r;
+            if(r[1]<0) Utility.alert("Cannot rewind to cycle "+r[0]+": no checkpoint that early (the circuit has been edited since, or it is too far back).");
+        }
+        
+        public void restartClock()
+        {
+            // one clock service runs the clocks of all the power supplies, while any of them is on
+            stopClock();
+            
+            ArrayList<PowerSupply> ps = new ArrayList<PowerSupply>();
+            boolean clockOn = false;
+            int n = components.size();
+            for(int i=0; i<n; i++)
+            {
+                if(components.get(i).getType()!=ComponentType.POWER_SUPPLY) continue;
+                
+                PowerSupply p = (PowerSupply)components.get(i);
+                ps.add(p);
+                if(p.isClockOn() && p.isPoweredOn() && p.getFrequency()>0) clockOn=true;
+            }
+            if(!clockOn) return;
+            
+            // repainted when the simulation publishes
+            clockService = new ClockService(ps.toArray(new PowerSupply[ps.size()]), simulator, clockOverrunPolicy);
+            clockService.start();
         }
         
         public ArrayList<CircuitComponent> getAllComponents() { return components; }
         public ArrayList<Wire> getAllWires() { return wires; }
+        public SimulationWorker getSimulator() { return simulator; }
+        public WaveformRecorder getRecorder() { return recorder; }
+        
+        public void loadMemoryImage(IC ic, MemoryBank m)
+        {
+            // the IC takes its new contents on the simulation thread
+            simulator.memoryLoaded(ic,m);
+            simulateCircuit();
+            repaint();
+        }
+        
+        public void setRecorder(WaveformRecorder r)
+        {
+            // r = null stops recording: the last capture is kept for export
+            if(r!=null) recorder=r;
+            simulator.setRecorder(r);
+            simulateCircuit();          // takes the first sample
+        }
         
         @Override
         public void paintComponent(Graphics g)
@@ -515,15 +668,15 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
                     Utility.alert("Cannot insert more than 1 breadboard.");
                 else {
                     breadboardCounter++;
-                    components.add(new Breadboard(new Location(lastX,lastY)));
+                    Breadboard b = new Breadboard(new Location(lastX,lastY));
+                    components.add(b);
+                    simulator.componentAdded(b);
                 }
             } else if(type==ComponentType.POWER_SUPPLY) {
-                if(powerSupplyCounter>0)
-                    Utility.alert("Cannot insert more than 1 power-supply.");
-                else {
-                    powerSupplyCounter++;
-                    components.add(new PowerSupply(new Location(lastX,lastY)));
-                }
+                powerSupplyCounter++;
+                PowerSupply ps = new PowerSupply(new Location(lastX,lastY));
+                components.add(ps);
+                simulator.componentAdded(ps);
             }
             
             floatingMode = true;
@@ -634,7 +787,9 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
                     
                 CircuitComponent link[] = { components.get(wireSourceComponentIndex), components.get(ci) };
                 int holeIDs[] = { wireSourceHoleID, hi };
-                wires.add(new Wire(currentWireColor,link,holeIDs));
+                Wire w = new Wire(currentWireColor,link,holeIDs);
+                wires.add(w);
+                simulator.wireAdded(w);
                 wireSourceNext=true;
                 circuitChanged=true;
             }
@@ -697,7 +852,9 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
                 }
                     
                 int holeIDs[] = { resistorSourceHoleID, hi };
-                components.add(new Resistor((Breadboard)components.get(ci),holeIDs,currentResistance));
+                Resistor r = new Resistor((Breadboard)components.get(ci),holeIDs,currentResistance);
+                components.add(r);
+                simulator.componentAdded(r);
                 resistorInsertSourceNext=true;
                 resistorInsertMode=false;
                 circuitChanged=true;
@@ -735,7 +892,9 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
                 return;
             }
                 
-            components.add(new LED((Breadboard)components.get(ci),hi,hi-1,currentLEDColor));
+            LED led = new LED((Breadboard)components.get(ci),hi,hi-1,currentLEDColor);
+            components.add(led);
+            simulator.componentAdded(led);
             insertLEDMode=false;
             circuitChanged=true;
         }
@@ -761,7 +920,9 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             }
                 
             // User has to click on Pin-1 hole
-            components.add(new IC(b,hi,icName));
+            IC ic = new IC(b,hi,icName);
+            components.add(ic);
+            simulator.componentAdded(ic);
             insertICMode=false;
             circuitChanged=true;
         }
@@ -785,7 +946,9 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             }
                 
             // User has to click on Pin-1 hole
-            components.add(new SevenSegmentLED(b,hi,current7LEDConfigIsCommonCathode,current7LEDColor));
+            SevenSegmentLED led = new SevenSegmentLED(b,hi,current7LEDConfigIsCommonCathode,current7LEDColor);
+            components.add(led);
+            simulator.componentAdded(led);
             insertSevenSegmentLEDMode=false;
             circuitChanged=true;
         }
@@ -816,6 +979,7 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
                         if(Utility.confirm("Are you sure you want to delete this "+x.getType().toString().toUpperCase()+"?", "Delete Component"))
                         {
                             components.remove(i);
+                            simulator.componentRemoved(x);
                             circuitChanged=true;
                             break;
                         }
@@ -841,40 +1005,10 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             } else if(components.get(ci).getType()==ComponentType.POWER_SUPPLY) {
                 PowerSupply ps=(PowerSupply)components.get(ci);
                 boolean cs=ps.click(lastX,lastY);
-                if(!cs) simulateFlag=false;
-                    
-                if(!ps.isClockOn() || !ps.isPoweredOn() || ps.getFrequency()==0)
-                {
-                    if(clockTimer!=null)
-                    {
-                        clockTimer.stop();
-                        clockTimer=null;
-                    }
-                }
-                    
-                if(ps.isClockOn() && ps.isPoweredOn() && ps.getFrequency()>0)
-                {
-                    if(clockTimer!=null)
-                    {
-                        clockTimer.stop();
-                        clockTimer=null;
-                    }
-                        
-                    int delay = (int)(1000 * PowerSupply.DUTY_CYCLE * (1.0 / ps.getFrequency()));
-                    clockTimer = new Timer(delay, new ActionListener() {
-                        @Override
-                        public void actionPerformed(ActionEvent actionEvent) {
-                            ps.trigger();
-                            simulateCircuit();
-                            revalidate();
-                            repaint();
-                            refreshCircuit();
-                        }
-                    });
-                        
-                    powerSupplyFrequency=ps.getFrequency();
-                    clockTimer.start();
-                }
+                if(!cs)
+                    simulateFlag=false;
+                else
+                    restartClock();
             }
         }
         // ------------------------------------------
@@ -1023,6 +1157,7 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
                     Wire temp = w;
                     Object x[] = { temp, (w.getSourceHoleID()==holeIndex) };
                     wires.remove(i);
+                    simulator.wireRemoved(w);
                     return x;
                 }
             }
@@ -1041,6 +1176,14 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         @Override
         public void paint(Graphics g)
         {
+            // show the latest result of the simulation thread
+            SimulationSnapshot s = simulator.getSnapshot();
+            if(s!=null && s!=appliedSnapshot)
+            {
+                s.apply();
+                appliedSnapshot=s;
+            }
+            
             g.setColor(CIRCUIT_BACKGROUND_COLOR);
             g.fillRect(0, 0, this.getWidth(), this.getHeight());
             
@@ -1143,6 +1286,8 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             }
         }
         
+        stopClock();
+        ((DrawingPane)drawingPane).getSimulator().shutdown();
         scroller.remove(drawingPane);
         this.remove(scroller);
         
@@ -1248,6 +1393,42 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
         dlgSetDimensions.setVisible(true);
     }
     
+    protected void mnuEditLoadMemoryImage_Click()
+    {
+        if(!isCircuitActive) return;
+        
+        ArrayList<CircuitComponent> c = ((DrawingPane)drawingPane).getAllComponents();
+        ArrayList<IC> memories = new ArrayList<IC>();
+        for(int i=0; i<c.size(); i++)
+        {
+            if(c.get(i).getType()==ComponentType.IC && ((IC)c.get(i)).isMemoryIC()) memories.add((IC)c.get(i));
+        }
+        if(memories.isEmpty())
+        {
+            Utility.alert("The circuit has no ROM or RAM chip.");
+            return;
+        }
+        
+        String names[] = new String[memories.size()];
+        for(int i=0; i<names.length; i++) names[i]=memories.get(i).getName()+" ("+memories.get(i).getDescription()+")";
+        Object choice = JOptionPane.showInputDialog(this, "Chip to load the image into:", "Load Memory Image", JOptionPane.QUESTION_MESSAGE, null, names, names[0]);
+        if(choice==null) return;
+        int k=0;
+        while(!names[k].equals(choice)) k++;
+        IC ic = memories.get(k);
+        
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Load Memory Image");
+        if(fc.showOpenDialog(this)!=JFileChooser.APPROVE_OPTION) return;
+        
+        try {
+            MemoryBank m = MemoryBank.load(ic.getDefinition(), fc.getSelectedFile().getAbsolutePath());
+            ((DrawingPane)drawingPane).loadMemoryImage(ic,m);
+        } catch(IOException e) {
+            Utility.alert("Could not load the image: "+e.getMessage());
+        }
+    }
+    
     protected void mnuEditWireMode_Click()
     {
         if(!isCircuitActive) {
@@ -1367,6 +1548,183 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
     // ------------------------------------------------
     
     
+    // ------------- Simulate Menu --------------------
+    protected void mnuSimulateRun_Click()
+    {
+        if(!isCircuitActive) return;
+        
+        String c = Utility.inputBox("Number of clock cycles to run (as fast as possible):", "1000");
+        if(c==null) return;
+        String h = Utility.inputBox("Stop as soon as this breadboard hole is HIGH (leave blank to run all the cycles):", "");
+        if(h==null) return;
+        
+        try {
+            int cycles = Integer.parseInt(c.trim());
+            int stopHoleID = (h.trim().length()==0 ? 0 : Integer.parseInt(h.trim()));
+            if(cycles<=0 || (stopHoleID!=0 && !BreadboardUtility.isHoleIDValid(stopHoleID)))
+            {
+                Utility.alert("Invalid number of cycles or hole.");
+                return;
+            }
+            
+            ((DrawingPane)drawingPane).runCycles(cycles,stopHoleID);
+            setTitle();
+        } catch(NumberFormatException e) {
+            Utility.alert("Invalid number of cycles or hole.");
+        }
+    }
+    
+    protected void mnuSimulateStop_Click()
+    {
+        if(isCircuitActive) ((DrawingPane)drawingPane).getSimulator().stopRun();
+    }
+    
+    protected void mnuSimulateRewind_Click()
+    {
+        if(!isCircuitActive) return;
+        
+        SimulationWorker simulator = ((DrawingPane)drawingPane).getSimulator();
+        long first = simulator.getFirstCheckpointCycle(), now = simulator.getCycle();
+        if(first<0)
+        {
+            Utility.alert("There is no checkpoint to rewind to yet.");
+            return;
+        }
+        
+        String c = Utility.inputBox("Rewind to cycle (from "+first+"; now at cycle "+now+"):", String.valueOf(first));
+        if(c==null) return;
+        
+        try {
+            long cycle = Long.parseLong(c.trim());
+            if(cycle<first)
+            {
+                Utility.alert("Invalid cycle: the oldest checkpoint is at cycle "+first+".");
+                return;
+            }
+            ((DrawingPane)drawingPane).rewind(cycle);
+        } catch(NumberFormatException e) {
+            Utility.alert("Invalid cycle.");
+        }
+    }
+    
+    protected void mnuSimulateTimed_Click()
+    {
+        timedMode=!timedMode;
+        mnuSimulateTimed.setText((timedMode ? "Ignore" : "Use")+" propagation delays");
+        if(isCircuitActive)
+        {
+            ((DrawingPane)drawingPane).getSimulator().setTimedMode(timedMode);
+            ((DrawingPane)drawingPane).simulateCircuit();
+        }
+    }
+    
+    protected void mnuSimulateClockPolicy_Click()
+    {
+        boolean skip=(clockOverrunPolicy==ClockOverrunPolicy.SKIP);
+        clockOverrunPolicy=(skip ? ClockOverrunPolicy.COALESCE : ClockOverrunPolicy.SKIP);
+        mnuSimulateClockPolicy.setText((skip ? "Skip" : "Keep")+" missed clock ticks");
+        
+        // a running clock is restarted with the new policy
+        if(clockService!=null) ((DrawingPane)drawingPane).restartClock();
+    }
+    
+    protected void mnuSimulateClockStatistics_Click()
+    {
+        ClockService cs=clockService;
+        if(cs==null)
+        {
+            Utility.alert("The clock is not running.");
+            return;
+        }
+        
+        Utility.alert(String.format("Clock edges: %d (dropped: %d, policy: %s)\nLateness: mean %.3f ms, max %.3f ms, jitter %.3f ms\n"
+                + "Simulation lag: %.3f ms, drift: %.0f ppm",
+                cs.getEdgeCount(), cs.getDroppedEdgeCount(), cs.getPolicy(),
+                cs.getMeanLatenessMillis(), cs.getMaxLatenessMillis(), cs.getJitterMillis(),
+                cs.getLagMillis(), cs.getDriftPPM()));
+    }
+    
+    protected void mnuSimulateRecord_Click()
+    {
+        if(!isCircuitActive) return;
+        
+        String h = Utility.inputBox("Breadboard holes to record, separated by commas (leave blank to stop recording):", "");
+        if(h==null) return;
+        if(h.trim().length()==0)
+        {
+            ((DrawingPane)drawingPane).setRecorder(null);
+            return;
+        }
+        
+        try {
+            String x[] = h.split(",");
+            int holeIDs[] = new int[x.length];
+            for(int i=0; i<x.length; i++)
+            {
+                holeIDs[i] = Integer.parseInt(x[i].trim());
+                if(!BreadboardUtility.isHoleIDValid(holeIDs[i]))
+                {
+                    Utility.alert("Invalid hole: "+holeIDs[i]);
+                    return;
+                }
+            }
+            ((DrawingPane)drawingPane).setRecorder(new WaveformRecorder(holeIDs,WaveformRecorder.DEFAULT_CAPACITY));
+        } catch(NumberFormatException e) {
+            Utility.alert("Invalid list of holes.");
+        }
+    }
+    
+    protected void mnuSimulateExportVCD_Click()
+    {
+        WaveformRecorder r = (isCircuitActive ? ((DrawingPane)drawingPane).getRecorder() : null);
+        if(r==null)
+        {
+            Utility.alert("No waveform has been recorded.");
+            return;
+        }
+        
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Export Waveforms");
+        fc.setSelectedFile(new File("waveforms.vcd"));
+        if(fc.showSaveDialog(this)!=JFileChooser.APPROVE_OPTION) return;
+        
+        try(Writer w = new FileWriter(fc.getSelectedFile()))
+        {
+            r.writeVCD(w);
+        } catch(IOException e) {
+            Utility.alert("Could not export the waveforms: "+e.getMessage());
+        }
+    }
+    
+    protected void mnuSimulateLogicAnalyzer_Click()
+    {
+        WaveformRecorder r = (isCircuitActive ? ((DrawingPane)drawingPane).getRecorder() : null);
+        if(r==null)
+        {
+            Utility.alert("No waveform has been recorded: choose the holes to record first (Simulate > Record Waveforms...).");
+            return;
+        }
+        
+        // a window of its own, so that the circuit stays in view while it runs
+        JFrame f = new JFrame("Logic Analyzer");
+        f.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        f.getContentPane().add(new LogicAnalyzerPanel(r));
+        f.pack();
+        f.setLocationRelativeTo(this);
+        f.setVisible(true);
+    }
+    
+    private void stopClock()
+    {
+        if(clockService!=null)
+        {
+            clockService.stop();
+            clockService=null;
+        }
+    }
+    // ------------------------------------------------
+    
+    
     // ------------- Help Menu ------------------------
     protected void mnuHelpAbout_Click()
     {
@@ -1408,7 +1766,13 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             mode="[Deletion Mode]";
         
         if(holeStatusVisible) mode+=(mode.length()>0 ? " " : "")+"[Current-Flow Visible]";                    
-        if(simulationMode) mode+=(mode.length()>0 ? " " : "")+"[Simulating...]";                    
+        SimulationWorker simulator = (drawingPane==null ? null : ((DrawingPane)drawingPane).getSimulator());
+        SimulationSnapshot snapshot = (simulator==null ? null : simulator.getSnapshot());
+        if(simulator!=null && simulator.isBusy()) mode+=(mode.length()>0 ? " " : "")+"[Simulating...]";                    
+        int period = (snapshot==null ? 0 : snapshot.getOscillationPeriod());
+        if(period>0) mode+=(mode.length()>0 ? " " : "")+"[Oscillating: period "+period+"]";
+        if(period<0) mode+=(mode.length()>0 ? " " : "")+"[Oscillating]";
+        if(timedMode) mode+=(mode.length()>0 ? " " : "")+"[Timed]";
         
         if(mode.length()>0) mode=" "+mode;
         
@@ -2096,6 +2460,17 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             String cfp = filePath;
             Object obj[]=FileIO.openCircuit(cfp);
             if(obj==null) return;
+            
+            ArrayList<CircuitComponent> components = (ArrayList<CircuitComponent>)obj[0];
+            ArrayList<Wire> wires = (ArrayList<Wire>)obj[1];
+            circuitWidth = (Integer)obj[2];
+            circuitHeight = (Integer)obj[3];
+            for(int i=0; i<components.size(); i++)
+            {
+                if(components.get(i).getType()==ComponentType.BREADBOARD) breadboardCounter++;
+                if(components.get(i).getType()==ComponentType.POWER_SUPPLY) powerSupplyCounter++;
+            }
+            
             mnuFileNew_Click();
 
             circuitFilePath=cfp;
@@ -2103,8 +2478,6 @@ class MainWindow extends javax.swing.JFrame implements AdjustmentListener
             hasBeenSaved=true;
             hasFileBeenAllotted=true;
 
-            ArrayList<CircuitComponent> components = (ArrayList<CircuitComponent>)obj[0];
-            ArrayList<Wire> wires = (ArrayList<Wire>)obj[1];
             ((DrawingPane)drawingPane).setData(components,wires);
             ((DrawingPane)drawingPane).updateBreadboardHoleStatusVisibility();
 
@@ -0,0 +1,178 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+class MemoryBank
+{
+    /*
+            MEMORY BANK
+            ------------------------------------------------
+            The contents of a ROM or RAM part (see ICDefinition, MEMORY PARTS), one byte per word, in a
+            ByteBuffer outside the Java heap. The IC decodes the address from its address pins, and the
+            word is then read or written at that offset:
+
+            62256 (32K x 8)     --->    32 KB buffer, word n = byte n
+
+            An image (a raw binary file, word 0 first) is memory-mapped read-only, so loading it is a single
+            mmap whatever its size: a ROM reads straight from the mapping (0xFF, erased, past the end of a
+            shorter image), and a RAM copies it in one bulk put into a buffer of its own, so that it never
+            writes back to the file. A RAM without an image only allocates its buffer on the first write,
+            and reads 0 until then.
+
+            The contents are hashed incrementally (the XOR of a mix of the address and word of every
+            non-zero word), so a RAM in a feedback loop is hashed in constant time while the loop settles
+            (see CompiledCircuit, OSCILLATION DETECTION). Only a RAM is part of a checkpoint, its words
+            copied 8 to a long through a view made once with the buffer, so a checkpoint allocates nothing.
+    */
+
+    private final int words;
+    private final int wordMask;
+    private final boolean writable;
+    private final String imagePath;         // null if there is no image
+
+    private ByteBuffer bytes;               // null until needed, always accessed by absolute index
+    private LongBuffer longs;               // view of 'bytes' for save/restore (RAM only), rewound before every use
+    private int limit;                      // words held by 'bytes', the others read as 'blank'
+    private final int blank;
+    private long contentHash;
+
+    private MemoryBank(ICDefinition d, String path)
+    {
+        words = d.getStorageWords();
+        wordMask = (1<<d.getWordSize())-1;
+        writable = (d.getICType()==ICType.RAM);
+        blank = (writable ? 0 : wordMask);
+        imagePath = path;
+    }
+
+    public boolean isWritable() { return writable; }
+    public String getImagePath() { return imagePath; }
+
+    // Factory method: an erased ROM or a cleared RAM
+    public static MemoryBank create(ICDefinition d)
+    {
+        return(new MemoryBank(d,null));
+    }
+
+    // Factory method: the contents of the image file at 'path'
+    public static MemoryBank load(ICDefinition d, String path) throws IOException
+    {
+        MemoryBank m = new MemoryBank(d,path);
+        try(RandomAccessFile f = new RandomAccessFile(path,"r"))
+        {
+            FileChannel fc = f.getChannel();
+            long size = fc.size();
+            if(size>m.words) throw new IOException("The image ("+size+" bytes) is larger than the chip ("+m.words+" words).");
+
+            // the mapping outlives the channel
+            ByteBuffer image = fc.map(FileChannel.MapMode.READ_ONLY,0,size);
+            if(m.writable)
+            {
+                m.allocate();
+                m.bytes.duplicate().put(image);
+            } else {
+                m.bytes = image;
+                m.limit = (int)size;
+            }
+        }
+        m.rehash();
+        return m;
+    }
+
+    public int read(int address)
+    {
+        return(address<limit ? bytes.get(address)&wordMask : blank);
+    }
+
+    public void write(int address, int word)
+    {
+        if(!writable) return;
+        if(bytes==null)
+        {
+            if(word==0) return;
+            allocate();
+        }
+
+        int old = bytes.get(address)&wordMask;
+        if(old==word) return;
+        bytes.put(address,(byte)word);
+        contentHash ^= mix(address,old) ^ mix(address,word);
+    }
+
+    public long hash(long h)
+    {
+        // Folds the contents into the 64-bit FNV-1a hash 'h'
+        return (h ^ contentHash) * 0x100000001b3L;
+    }
+
+    public int getStateLength()
+    {
+        // in longs (0 for a ROM, whose contents never change)
+        return(writable ? getStateBytes()>>>3 : 0);
+    }
+
+    public void save(long dst[], int pos)
+    {
+        if(!writable) return;
+        if(bytes==null)
+        {
+            Arrays.fill(dst,pos,pos+getStateLength(),0L);
+            return;
+        }
+        longs.clear();
+        longs.get(dst,pos,getStateLength());
+    }
+
+    public void restore(long src[], int pos)
+    {
+        if(!writable) return;
+        if(bytes==null)
+        {
+            boolean cleared=true;
+            for(int i=0; cleared && i<getStateLength(); i++) cleared=(src[pos+i]==0);
+            if(cleared) return;
+            allocate();
+        }
+        longs.clear();
+        longs.put(src,pos,getStateLength());
+        rehash();
+    }
+
+    private int getStateBytes()
+    {
+        // the words rounded up to a whole number of longs
+        return (words+7)&~7;
+    }
+
+    private void allocate()
+    {
+        bytes = ByteBuffer.allocateDirect(getStateBytes());
+        longs = bytes.asLongBuffer();
+        limit = words;
+    }
+
+    private void rehash()
+    {
+        contentHash = 0;
+        for(int a=0; a<limit; a++) contentHash ^= mix(a,bytes.get(a)&wordMask);
+    }
+
+    private static long mix(int address, int word)
+    {
+        // 0 for a cleared word, so that the hash of a cleared RAM is 0 (the finalizer of SplitMix64)
+        if(word==0) return 0;
+        long z = (((long)address)<<8) | word;
+        z = (z ^ (z>>>30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z>>>27)) * 0x94d049bb133111ebL;
+        return z ^ (z>>>31);
+    }
+}
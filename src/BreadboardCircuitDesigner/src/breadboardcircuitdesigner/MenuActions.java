@@ -61,6 +61,9 @@ class MenuActions implements ActionListener
             case "set dimensions":
                 window.mnuEditSetDimensions_Click();
                 break;
+            case "load memory image...":
+                window.mnuEditLoadMemoryImage_Click();
+                break;
             case "set to idle mode":
                 window.mnuEditSetToIdleMode_Click();
                 break;
@@ -91,6 +94,37 @@ class MenuActions implements ActionListener
                 window.mnuViewHoleStatus_Click();
                 break;
             
+            // Simulate Menu
+            case "run cycles...":
+                window.mnuSimulateRun_Click();
+                break;
+            case "stop run":
+                window.mnuSimulateStop_Click();
+                break;
+            case "keep missed clock ticks":
+            case "skip missed clock ticks":
+                window.mnuSimulateClockPolicy_Click();
+                break;
+            case "use propagation delays":
+            case "ignore propagation delays":
+                window.mnuSimulateTimed_Click();
+                break;
+            case "clock statistics":
+                window.mnuSimulateClockStatistics_Click();
+                break;
+            case "record waveforms...":
+                window.mnuSimulateRecord_Click();
+                break;
+            case "export waveforms (vcd)...":
+                window.mnuSimulateExportVCD_Click();
+                break;
+            case "logic analyzer...":
+                window.mnuSimulateLogicAnalyzer_Click();
+                break;
+            case "rewind to cycle...":
+                window.mnuSimulateRewind_Click();
+                break;
+            
             // Help Menu
             case "about...":
                 window.mnuHelpAbout_Click();
@@ -0,0 +1,421 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import static breadboardcircuitdesigner.BreadboardUtility.*;
+
+import java.util.ArrayList;
+
+class Netlist
+{
+    /*
+            NET EXTRACTION
+            ------------------------------------------------
+            A net is a set of breadboard holes which are electrically the same node.
+            Holes are merged into nets using a disjoint-set (union-find) over hole IDs:
+
+            1.  Internal strips: each power-rail half-row (25 holes) and each column (5 holes)
+            2.  Wires which start and end on the same breadboard
+            3.  Resistors on the breadboard (treated as ideal conductors, as before)
+
+            Once extracted, every net gets an ID, and the holeToNet table answers
+            "are these two holes connected?" in O(1)
+
+            INCREMENTAL MAINTENANCE
+            ------------------------------------------------
+            After extraction the netlist is kept alive and patched on every edit:
+
+            addConnection       --->    relabel the holes of the smaller net into the larger one
+            removeConnection    --->    re-split only the affected net by a breadth-first search
+                                        over its strips and remaining connections
+
+            Net IDs freed by a merge are recycled, so IDs stay below getNetCount() but
+            an ID may have no holes. The version number changes whenever any net changes,
+            and the nets which changed are listed until clearChangedNets, so that only the
+            ICs with pins on them need to be looked at again (see SimulationEngine.compileCircuit).
+    */
+
+    private Breadboard base;
+
+    private int holeToNet[];                // net-ID of every hole, index = holeID-1
+    private int netHoles[][];               // hole IDs belonging to each net (first netSizes[n] entries are valid)
+    private int netSizes[];
+    private int netCount;
+
+    private int freeNets[];                 // stack of net-IDs released by merges
+    private int freeNetCount;
+
+    private int edges[][];                  // holes directly connected to each hole by wires/resistors, index = holeID-1
+    private int edgeCounts[];
+
+    private int version;
+    private int changedNets[];              // nets merged or split since clearChangedNets (first changedNetCount entries)
+    private int changedNetCount;
+    private boolean netChanged[];
+
+    // ---------- scratch buffers for re-splitting ----------
+    private int queue[];
+    private boolean reached[];
+    // ------------------------------------------------------
+
+    private Netlist(Breadboard b)
+    {
+        base=b;
+        holeToNet=new int[Breadboard.MAX_HOLES];
+        edges=new int[Breadboard.MAX_HOLES][];
+        edgeCounts=new int[Breadboard.MAX_HOLES];
+        queue=new int[Breadboard.MAX_HOLES];
+        reached=new boolean[Breadboard.MAX_HOLES];
+        changedNets=new int[Breadboard.MAX_HOLES];
+        netChanged=new boolean[Breadboard.MAX_HOLES];
+    }
+
+    public Breadboard getBase() { return base; }
+    public int getNetCount() { return netCount; }
+    public int[] getHoleToNet() { return holeToNet; }
+    public int getNetID(int holeID) { return holeToNet[holeID-1]; }
+    public int getNetSize(int netID) { return netSizes[netID]; }
+    public int getHoleInNet(int netID, int index) { return netHoles[netID][index]; }
+    public int getVersion() { return version; }
+    public int getChangedNetCount() { return changedNetCount; }
+    public int getChangedNet(int index) { return changedNets[index]; }
+    public boolean isNetChanged(int netID) { return netChanged[netID]; }
+
+    public void clearChangedNets()
+    {
+        for(int i=0; i<changedNetCount; i++) netChanged[changedNets[i]]=false;
+        changedNetCount=0;
+    }
+
+    public int[] getHolesInNet(int netID)
+    {
+        int h[] = new int[netSizes[netID]];
+        System.arraycopy(netHoles[netID],0,h,0,h.length);
+        return h;
+    }
+
+    public boolean areHolesConnected(int hole1, int hole2)
+    {
+        return(holeToNet[hole1-1]==holeToNet[hole2-1]);
+    }
+
+    // Factory method
+    public static Netlist extract(Breadboard b, ArrayList<Wire> wires, ArrayList<Resistor> resistors)
+    {
+        Netlist n = new Netlist(b);
+
+        int parent[] = new int[Breadboard.MAX_HOLES];
+        int rank[] = new int[Breadboard.MAX_HOLES];
+        for(int i=0; i<parent.length; i++) parent[i]=i;
+
+        // Step-1: internal strips
+        for(int hid=1; hid<=Breadboard.MAX_HOLES; hid++)
+        {
+            int prev = getPreviousHoleInStrip(hid);
+            if(prev>0) union(parent,rank,prev,hid);
+        }
+
+        // Step-2: wires on this breadboard
+        int wc = wires.size();
+        for(int i=0; i<wc; i++)
+        {
+            Wire w = wires.get(i);
+            if(w.getSource()!=b || w.getSink()!=b) continue;
+
+            n.addEdge(w.getSourceHoleID(), w.getSinkHoleID());
+            union(parent,rank,w.getSourceHoleID(),w.getSinkHoleID());
+        }
+
+        // Step-3: resistors on this breadboard
+        int rc = resistors.size();
+        for(int i=0; i<rc; i++)
+        {
+            Resistor r = resistors.get(i);
+            if(r.getBase()!=b) continue;
+
+            n.addEdge(r.getSourceHoleID(), r.getSinkHoleID());
+            union(parent,rank,r.getSourceHoleID(),r.getSinkHoleID());
+        }
+
+        n.compact(parent);
+        return n;
+    }
+
+    // ------------------------------------------
+    // Incremental edits
+    // ------------------------------------------
+    public void addConnection(int hole1, int hole2)
+    {
+        addEdge(hole1,hole2);
+
+        int a = holeToNet[hole1-1], b = holeToNet[hole2-1];
+        if(a==b) return;
+
+        // merge the smaller net into the larger one
+        if(netSizes[a]<netSizes[b])
+        {
+            int t=a; a=b; b=t;
+        }
+
+        ensureNetCapacity(a,netSizes[a]+netSizes[b]);
+        for(int i=0; i<netSizes[b]; i++)
+        {
+            int hid = netHoles[b][i];
+            holeToNet[hid-1]=a;
+            netHoles[a][netSizes[a]++]=hid;
+        }
+
+        netSizes[b]=0;
+        freeNets[freeNetCount++]=b;
+        markChanged(a);
+        markChanged(b);
+        version++;
+    }
+
+    public void removeConnection(int hole1, int hole2)
+    {
+        if(!removeEdge(hole1,hole2)) return;
+
+        // Removing one connection can split a net into at most 2 nets:
+        // mark everything still reachable from hole1, then check whether hole2 is among them
+        int net = holeToNet[hole1-1];
+        int count = markReachable(hole1);
+
+        if(!reached[hole2-1])
+        {
+            int other = allocateNet();
+            int all[] = netHoles[net];
+            int total = netSizes[net];
+
+            ensureNetCapacity(other,total-count);
+            int keep[] = new int[count];
+            int k=0;
+
+            for(int i=0; i<total; i++)
+            {
+                int hid = all[i];
+                if(reached[hid-1])
+                {
+                    keep[k++]=hid;
+                } else {
+                    holeToNet[hid-1]=other;
+                    netHoles[other][netSizes[other]++]=hid;
+                }
+            }
+
+            netHoles[net]=keep;
+            netSizes[net]=count;
+            markChanged(net);
+            markChanged(other);
+            version++;
+        }
+
+        clearReached(net);
+    }
+
+    // ------------------------------------------
+    // Internal helpers
+    // ------------------------------------------
+    private int markReachable(int start)
+    {
+        // breadth-first search over strips and connections, starting from 'start'
+        int head=0, tail=0;
+        queue[tail++]=start;
+        reached[start-1]=true;
+
+        while(head<tail)
+        {
+            int hid = queue[head++];
+
+            // strip neighbours: the whole strip is reached through its first hole
+            int first = getFirstHoleInStrip(hid);
+            for(int h=first; h>0; h=getNextHoleInStrip(h))
+            {
+                if(!reached[h-1])
+                {
+                    reached[h-1]=true;
+                    queue[tail++]=h;
+                }
+            }
+
+            for(int i=0; i<edgeCounts[hid-1]; i++)
+            {
+                int h = edges[hid-1][i];
+                if(!reached[h-1])
+                {
+                    reached[h-1]=true;
+                    queue[tail++]=h;
+                }
+            }
+        }
+
+        return tail;
+    }
+
+    private void markChanged(int net)
+    {
+        if(netChanged[net]) return;
+        netChanged[net]=true;
+        changedNets[changedNetCount++]=net;
+    }
+
+    private void clearReached(int net)
+    {
+        // only holes of the original net (now 'net' and possibly one other) can be marked
+        for(int i=0; i<netSizes[net]; i++) reached[netHoles[net][i]-1]=false;
+    }
+
+    private void addEdge(int hole1, int hole2)
+    {
+        addHalfEdge(hole1,hole2);
+        addHalfEdge(hole2,hole1);
+    }
+
+    private void addHalfEdge(int from, int to)
+    {
+        int i = from-1;
+        if(edges[i]==null)
+        {
+            edges[i]=new int[2];
+        } else if(edgeCounts[i]==edges[i].length) {
+            int e[] = new int[edges[i].length*2];
+            System.arraycopy(edges[i],0,e,0,edgeCounts[i]);
+            edges[i]=e;
+        }
+        edges[i][edgeCounts[i]++]=to;
+    }
+
+    private boolean removeEdge(int hole1, int hole2)
+    {
+        return(removeHalfEdge(hole1,hole2) && removeHalfEdge(hole2,hole1));
+    }
+
+    private boolean removeHalfEdge(int from, int to)
+    {
+        int i = from-1;
+        for(int j=0; j<edgeCounts[i]; j++)
+        {
+            if(edges[i][j]==to)
+            {
+                edges[i][j]=edges[i][--edgeCounts[i]];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int allocateNet()
+    {
+        if(freeNetCount>0) return freeNets[--freeNetCount];
+
+        if(netCount==netHoles.length)
+        {
+            // cannot happen: there can never be more nets than holes
+            return -1;
+        }
+        return netCount++;
+    }
+
+    private void ensureNetCapacity(int net, int size)
+    {
+        if(netHoles[net]==null || netHoles[net].length<size)
+        {
+            int h[] = new int[Math.max(size,4)];
+            if(netHoles[net]!=null) System.arraycopy(netHoles[net],0,h,0,netSizes[net]);
+            netHoles[net]=h;
+        }
+    }
+
+    private void compact(int parent[])
+    {
+        // Assign IDs to the roots, and group the holes by net
+        int rootToNet[] = new int[Breadboard.MAX_HOLES];
+        for(int i=0; i<rootToNet.length; i++) rootToNet[i]=-1;
+
+        netSizes = new int[Breadboard.MAX_HOLES];
+        netHoles = new int[Breadboard.MAX_HOLES][];
+        freeNets = new int[Breadboard.MAX_HOLES];
+        freeNetCount = 0;
+        netCount = 0;
+
+        for(int i=0; i<Breadboard.MAX_HOLES; i++)
+        {
+            int root = find(parent,i);
+            if(rootToNet[root]==-1) rootToNet[root]=netCount++;
+            holeToNet[i]=rootToNet[root];
+            netSizes[holeToNet[i]]++;
+        }
+
+        for(int i=0; i<netCount; i++)
+        {
+            netHoles[i]=new int[netSizes[i]];
+            netSizes[i]=0;
+        }
+
+        for(int i=0; i<Breadboard.MAX_HOLES; i++)
+        {
+            int net = holeToNet[i];
+            netHoles[net][netSizes[net]++]=i+1;
+        }
+    }
+
+    private static int find(int parent[], int x)
+    {
+        // find with path-halving
+        while(parent[x]!=x)
+        {
+            parent[x]=parent[parent[x]];
+            x=parent[x];
+        }
+        return x;
+    }
+
+    private static void union(int parent[], int rank[], int hole1, int hole2)
+    {
+        int a = find(parent,hole1-1), b = find(parent,hole2-1);
+        if(a==b) return;
+
+        if(rank[a]<rank[b])
+        {
+            parent[a]=b;
+        } else if(rank[a]>rank[b]) {
+            parent[b]=a;
+        } else {
+            parent[b]=a;
+            rank[a]++;
+        }
+    }
+
+    // ------------------------------------------
+    // Strip geometry
+    // ------------------------------------------
+    private static int getFirstHoleInStrip(int holeID)
+    {
+        if(isHoleInRow(holeID)) return getFirstHoleIDInRow(getRowIDFromHoleID(holeID));
+
+        // holes of the same column are 63 apart, within the top (201-515) and bottom (516-830) halves
+        int firstOfHalf = (holeID<=515 ? 201 : 516);
+        return firstOfHalf + ((holeID-firstOfHalf) % 63);
+    }
+
+    private static int getNextHoleInStrip(int holeID)
+    {
+        if(isHoleInRow(holeID))
+        {
+            return(holeID % ROW_SIZE == 0 ? -1 : holeID+1);
+        }
+
+        int next = holeID+63;
+        return((holeID<=515 && next>515) || next>Breadboard.MAX_HOLES ? -1 : next);
+    }
+
+    private static int getPreviousHoleInStrip(int holeID)
+    {
+        int first = getFirstHoleInStrip(holeID);
+        if(holeID==first) return -1;
+        return(isHoleInRow(holeID) ? holeID-1 : holeID-63);
+    }
+}
@@ -18,12 +18,14 @@ class PowerSupply extends CircuitComponent
     static final int WIDTH = 170;
     static final int HEIGHT = 160;
     
-    private boolean isPowerON=false;
-    private boolean isClockON=false;
-    private boolean isClockPulseHigh=false;
+    // switched on the EDT, read (and the clock triggered) by the simulation thread
+    private volatile boolean isPowerON=false;
+    private volatile boolean isClockON=false;
+    private volatile boolean isClockPulseHigh=false;
     
     public static final float DUTY_CYCLE = 0.5f;
-    private double frequency;
+    private volatile double frequency;
+    private volatile double clockPhase;             // in degrees: delays the clock by a part of its period (see EventScheduler)
     private boolean holeCurrents[];
     
     PowerSupply(Location pos)
@@ -42,7 +44,12 @@ class PowerSupply extends CircuitComponent
     public boolean isClockPulseHigh() { return isClockPulseHigh; }
     
     public double getFrequency() { return frequency; }
-    public void setFrequency(double f) { frequency=f; }            
+    public double getClockPhase() { return clockPhase; }
+    public void setPoweredOn(boolean on) { isPowerON=on; setHoleCurrent(1,on); }
+    public void setClockOn(boolean on) { isClockON=on; }
+    public void setFrequency(double f) { frequency=f; }
+    public void setClockPhase(double p) { clockPhase=p; }
+    public void setClockPulseHigh(boolean high) { isClockPulseHigh=high; }            
     
     public void trigger()
     {
@@ -76,6 +83,9 @@ class PowerSupply extends CircuitComponent
             {
                 String p=Utility.inputBox("Enter frequency (in Hertz) [duty-cycle=50%]:", ""+frequency);
                 if(p!=null) frequency=Double.parseDouble(p);
+                
+                p=Utility.inputBox("Enter clock phase (in degrees) [0-360]:", ""+clockPhase);
+                if(p!=null) clockPhase=Double.parseDouble(p);
                 return true;
             }
         }
@@ -242,20 +252,21 @@ class PowerSupply extends CircuitComponent
     @Override
     public String getPropertiesAsString(ArrayList<CircuitComponent> components)
     {
-        // componentType;name;location;maxHoles;width;height;frequency
-        return super.getPropertiesAsString(components)+";"+this.getFrequency();
+        // componentType;name;location;maxHoles;width;height;frequency;phase
+        return super.getPropertiesAsString(components)+";"+this.getFrequency()+";"+this.getClockPhase();
     }
     
     // Factory method
     public static PowerSupply parseFromString(String data)
     {
-        // componentType;name;location;maxHoles;width;height;frequency
+        // componentType;name;location;maxHoles;width;height;frequency[;phase]
         String x[] = data.split(";");
         if(!x[0].equalsIgnoreCase("power_supply")) return null;
         
         Location loc = new Location(x[2]);
         PowerSupply ps = new PowerSupply(loc);
         ps.setFrequency(Double.parseDouble(x[6]));
+        if(x.length>7) ps.setClockPhase(Double.parseDouble(x[7]));
         
         return ps;
     }
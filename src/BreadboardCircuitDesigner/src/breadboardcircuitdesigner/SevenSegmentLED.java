@@ -97,6 +97,12 @@ class SevenSegmentLED extends CircuitComponent
         }
     }
     
+    public void turnOnOffSegments(int litSegments)
+    {
+        // bit #i set = segment "abcdefg.".charAt(i) is lit
+        for(int i=0; i<8; i++) isON[i]=((litSegments>>i)&1)!=0;
+    }
+    
     public int getHoleID(char x)
     {
         int pinNumbers[] = { 7, 6, 4, 2, 1, 9, 10, 5 };
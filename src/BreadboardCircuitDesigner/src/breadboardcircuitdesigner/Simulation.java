@@ -5,569 +5,207 @@
 
 package breadboardcircuitdesigner;
 
-import static breadboardcircuitdesigner.BreadboardUtility.*;
-import static breadboardcircuitdesigner.CircuitUtility.*;
-
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Stack;
+import java.util.Arrays;
 
 class Simulation 
 {
-    private static boolean conMatrix[][];
-    private static boolean IODependencyMatrix[][];
-    
-    private static boolean isCyclic;
-    private static boolean isHalfCyclic;
-    private static boolean stopSimulation;
-    
-    public static boolean simulationRunning;
-    public static final int MAX_ITERATIONS = 10;
-    
     /*
             FUNCTION DEPENDENCIES IN THIS MODULE
             ------------------------------------------------
-            simulateCircuit ---> getHoleStates
-                            |
-                            ---> hasStateChanged
-                            |
-                            ---> turnOnOffLEDs
-    
-            getHoleStates   ---> sortICsByDependency
-                            |
-                            ---> updateHoleStates
-    
-            sortICsByDependency     --->    getDirectHoleConnectionsMatrix
-                                    |
-                                    --->    areConnectedInOrder
+            getIODependencyMatrix   --->    drives ---> areConnectedInOrder ---> areHolesConnected [depends on output of Netlist.extract]
+
+            updateIODependencyMatrix--->    drives [only the rows and columns of the ICs with pins on the changed nets]
     
-            getDirectHoleConnectionsMatrix  --->    areHolesDirectlyConnectedInternally
-                                            |
-                                            --->    areHolesDirectlyConnectedViaWire
-                                            |
-                                            --->    areHolesDirectlyConnectedViaResistor
+            condenseICsByDependency --->    Tarjan's algorithm over the output of getIODependencyMatrix
     
-            areConnectedInOrder ---> areHolesConnected [depends on output of getDirectHoleConnectionsMatrix]
+            COMPILED CIRCUIT
+            ------------------------------------------------
+            Every net keeps its present value between simulations, and a change in the value of a net
+            marks only the ICs having an input pin on that net, so a clock tick only evaluates the ICs
+            in the fan-out cone of the clock. The ICs are condensed into strongly-connected components
+            (feedback loops) in topological order: the acyclic parts are evaluated once, and the fixed-point
+            iteration is confined to each loop, which stops as soon as it settles or repeats a state (see CompiledCircuit).
+    
+            This module only holds the stateless steps of compiling a circuit: everything kept between
+            simulations belongs to a SimulationEngine (one per circuit).
     */
     
-    public static void stopSimulation()
+    public static boolean[][] getIODependencyMatrix(ArrayList<IC> list, Netlist netlist)
     {
-        stopSimulation=true;
-    }
-    
-    public static void simulateCircuit(ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
-    {
-        stopSimulation=false;
-        conMatrix=null;
-        IODependencyMatrix=null;
-        isCyclic=false;
-        isHalfCyclic=false;
-        
-        //  WARNING: This function assumes that there is only 1 breadboard and 1 power supply
+        // Adjacency matrix of all IC output->input connections: [i][j] = an output of IC #i drives an input of IC #j
+        // WARNING: Assuming only 1 breadboard exists
+        IC array[] = new IC[list.size()];
+        for(int i=0; i<array.length; i++) array[i]=list.get(i);
         
-        // Step-1: Find the only breadboard which is connected to power supply
-        Breadboard b = null;
-        int cc = components.size();
-        for(int i=0; i<cc; i++)
+        boolean matrix[][] = new boolean[array.length][array.length];
+        for(int i=0; i<array.length; i++)
         {
-            if(components.get(i).getType()==ComponentType.BREADBOARD)
+            for(int j=0; j<array.length; j++)
             {
-                // Check if it is connected to power supply
-                b=(Breadboard)components.get(i);
-                
-                if(hasBreadboardPower(b,components,wires))
-                    break;
-                else
-                    b=null;
-            } else if(components.get(i).getType()==ComponentType.POWER_SUPPLY) {
-                PowerSupply ps = (PowerSupply)components.get(i);
-                if(!ps.isPoweredOn()) return;
+                //if(i==j) continue;
+
+                matrix[i][j]=drives(array[i],array[j],netlist);
             }
         }
         
-        if(b==null) return;     // if no such breadboard then abort
-        
-        int c=0;
-        boolean cont=true;
-        
-        simulationRunning=true;
-        HoleState state[]=null;
-        do {
-            cont=true;
-            state = (state==null ? getHoleStates(b,components,wires) : getHoleStates(state,b,components,wires));
-            
-            if(c>MAX_ITERATIONS) cont=false;
-            if(c!=0 && !hasStateChanged(state,b.getHoleStates())) cont=false;            
-            
-            // Step-2: get the holestates
-            b.setHoleStates(state);
-            
-            // Step-3: turn on/off LEDs
-            turnOnOffLEDs(b,components);
-            
-            c++;
-            
-            //System.out.println("AFTER C="+c);
-            //for(int i=0; i<state.length; i++) System.out.print(state[i].toString().charAt(0));
-            //System.out.println();
-            
-            if(!isHalfCyclic && !isCyclic) cont=false;
-            Thread.yield();
-        } while(cont && !stopSimulation);
-        
-        simulationRunning=false;
-    }
-    
-    private static boolean hasStateChanged(HoleState a[], HoleState b[])
-    {
-        for(int i=0; i<a.length; i++)
-        {
-            if(b[i]!=a[i]) return true;
-        }
-        return false;
-    }
-    
-    private static HoleState[] getHoleStates(Breadboard b, ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
-    {
-        HoleState state[] = new HoleState[Breadboard.MAX_HOLES];
-        for(int i=0; i<state.length; i++) state[i]=HoleState.NO_CONNECTION;
-        return getHoleStates(state,b,components,wires);
-    }
-
-    private static HoleState[] getHoleStates(HoleState state[], Breadboard b, ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
-    {    
-        boolean rowMatrix[][] = getRowConnectionsMatrix(b,wires,components);
-        boolean colMatrix[][] = getColumnConnectionsMatrix(b,wires,components);
-        boolean rowColMatrix[][] = getRowColumnConnectionsMatrix(b,wires,components);
-        
-        ArrayList<CircuitComponent> external = getExternalConnectedComponents(b,wires,components);
-        ArrayList<Resistor> resistors = (ArrayList<Resistor>)categorizeComponents(components,wires)[4];
-        
-        HashSet<Integer> visitedRows = new HashSet<Integer>();
-        HashSet<Integer> visitedCols = new HashSet<Integer>();
-                
+        // ------------ DIAGNOSTICS -------------
         /*
-            STEPS
-            ----------------
-            1.  (a) Scan connected power supplies
-                (b) Set holestates based on VCC/GND from those power supplies
-        
-            2.  (a) Scan ICs
-                (b) Set holestates based on IC outputs
-        
-            3.  Ignore other connected breadboards (for now): TOO COMPLICATED!
-        */
-        
-        // Step-1: Scan connected power supplies
-        int ec = external.size();
-        for(int i=0; i<ec; i++)
+        for(int i=0; i<matrix.length; i++)
         {
-            if(external.get(i).getType()!=ComponentType.POWER_SUPPLY) continue;
-            
-            PowerSupply ps = (PowerSupply)external.get(i);
-            int holeIDs[] = getPowerSupplyTargetHoleIDs(ps,b,wires);
-            
-            for(int j=0; j<3; j++)
+            for(int j=0; j<matrix[i].length; j++)
             {
-                if(holeIDs[j]>0)        // only for those holes which are connected to this breadboard
-                {
-                    int chid = holeIDs[j];
-                    HoleState ns = ps.getOutputFromHole(j+1);
-                    
-                    updateHoleStates(chid, ns, state, rowMatrix, colMatrix, rowColMatrix, visitedRows, visitedCols);
-                }
+                System.out.print(matrix[i][j]+"\t");
             }
+            System.out.println();
         }
-        
-        // Step-2: Scan ICs
-        ArrayList<IC> oics = getICsOn(b,components);
-        ArrayList<IC> ics = sortICsByDependency(oics,wires,resistors);
-        
-        /*
-        System.out.println("BEFORE SORTING:");
-        for(int i=0; i<oics.size(); i++) System.out.println(oics.get(i).getName());
-        System.out.println("\nAFTER SORTING:");
-        for(int i=0; i<ics.size(); i++) System.out.println(ics.get(i).getName());
         */
-            
-        
-        
-        int icsc = ics.size();
-        
-        int ichids[][]=new int[icsc][];
-        boolean isInput[][]=new boolean[icsc][];
-        HoleState inputHoleStates[][]=new HoleState[icsc][];
-        HoleState out[][]=new HoleState[icsc][];
-        
-        for(int iteration=1; iteration<=MAX_ITERATIONS; iteration++)
-        {        
-            HoleState oldState[] = new HoleState[state.length];
-            System.arraycopy(state,0,oldState,0,state.length);
-            
-            for(int i=0; i<icsc; i++)
-            {
-                IC ic = ics.get(i);
-                ichids[i] = ic.getHoleIDs();
-                isInput[i] = ic.getPinTypes();
-                inputHoleStates[i] = new HoleState[ic.getPinCount()];
-
-                // Form the input array
-                for(int j=0; j<inputHoleStates[i].length; j++)
-                {
-                    if(isInput[i][j])
-                    {
-                        // INPUT PIN
-                        inputHoleStates[i][j]=state[ichids[i][j]-1];
-                    } else {
-                        // OUTPUT PIN
-                        if(state[ichids[i][j]-1]!=HoleState.NO_CONNECTION)
-                        {
-                            // User has connected something (power/ground) to
-                            // the output pin of IC: this is not allowed!
-                            //Utility.alert("Error in circuit! No connections are allowed to output pins of ICs, but a connection has been found to output pin "+(j+1)+" of IC:" + ic.getName());
-                        }
-
-                        inputHoleStates[i][j]=state[ichids[i][j]-1]; //HoleState.NO_CONNECTION;
-                    }
-                }
-            }
-
-            visitedRows.clear();
-            visitedCols.clear();
-
-            for(int i=0; i<icsc; i++)
-            {
-                IC ic = ics.get(i);
-
-                // Get the inputs to the IC
-                //System.out.println("\nInputs for "+ic.getName());
-                //for(int p=0; p<inputHoleStates[i].length; p++) System.out.print(inputHoleStates[i][p].toString().charAt(0));
-                //System.out.println();
-
-                out[i]=ic.getOutputs(inputHoleStates[i]);
-
-                //System.out.println("Outputs for "+ic.getName());
-                //for(int p=0; p<out[i].length; p++) System.out.print(out[i][p].toString().charAt(0));
-                //System.out.println();
-
-
-                // Update the hole states based on outputs
-                for(int j=0; j<inputHoleStates[i].length; j++)
-                {
-                    if(!isInput[i][j])
-                    {
-                        // OUTPUT PIN
-                        HoleState ns = out[i][j];
-                        updateHoleStates(ichids[i][j], ns, state, rowMatrix, colMatrix, rowColMatrix, visitedRows, visitedCols);
-                    }
-                }
-            }
-
-            //printState(oldState);
-            //printState(state);
-
-            if(!hasStateChanged(state,oldState)) return state;
-            //System.out.println("NOT EQUAL, SO CONTINUING...");
-        }
+        // ---------------------------------------
         
-        return state;
-    }
-     
-    private static void printState(HoleState state[])
-    {
-        System.out.println();
-        for(HoleState s:state) System.out.print(s.toString().charAt(0));
-        System.out.println();
+        return matrix;
     }
     
-    private static void turnOnOffLEDs(Breadboard b, ArrayList<CircuitComponent> components)
+    public static void updateIODependencyMatrix(boolean matrix[][], ArrayList<IC> list, boolean affected[], Netlist netlist)
     {
-        HoleState state[] = b.getHoleStates();
-        int cc = components.size();
-        
-        for(int i=0; i<cc; i++)
+        // As getIODependencyMatrix, after an edit of the netlist: only the row and the column of every IC marked in
+        // 'affected' (see getICsOnChangedNets) can have changed
+        for(int i=0; i<matrix.length; i++)
         {
-            if(components.get(i).getType()==ComponentType.LED)
-            {
-                LED led = (LED)components.get(i);
-                if(led.getBase()==b)
-                {
-                    HoleState anodeState = state[led.getAnodeHoleID()-1];
-                    HoleState cathodeState = state[led.getCathodeHoleID()-1];
+            if(!affected[i]) continue;
 
-                    if(anodeState==HoleState.HIGH && cathodeState==HoleState.LOW)
-                        led.turnON();
-                    else
-                        led.turnOFF();
-                }
-            } else if(components.get(i).getType()==ComponentType.SEVEN_SEGMENT_LED) {
-                SevenSegmentLED led = (SevenSegmentLED)components.get(i);
-                if(led.getBase()==b)
-                {
-                    boolean commonCathode = led.isCommonCathode();
-                    int commonHoleIDs[] = led.getCommonHoleIDs();
-                    
-                    HoleState com1 = state[commonHoleIDs[0]-1];
-                    HoleState com2 = state[commonHoleIDs[1]-1];
-                                        
-                    if(commonCathode)
-                    {
-                        // common holes must be grounded
-                        if(com1!=HoleState.LOW || com2!=HoleState.LOW)
-                        {
-                            led.turnOFF();
-                            continue;
-                        }
-                    } else {
-                        if(com1!=HoleState.HIGH || com2!=HoleState.HIGH)
-                        {
-                            led.turnOFF();
-                            continue;
-                        }
-                    }
-                    
-                    HoleState y[]=new HoleState[8];
-                    String x = "abcdefg.";
-                    for(int j=0; j<8; j++)
-                    {
-                        int hid = led.getHoleID(x.charAt(j));
-                        y[j]=state[hid-1];
-                    }
-                    led.turnOnOffSegments(y);
-                }
+            IC ic = list.get(i);
+            for(int j=0; j<matrix.length; j++)
+            {
+                matrix[i][j]=drives(ic,list.get(j),netlist);
+                matrix[j][i]=drives(list.get(j),ic,netlist);
             }
         }
     }
-    
-    private static boolean updateHoleStates(Breadboard b, int holeID, HoleState newState, HoleState state[], HashSet<Integer> visitedRows, HashSet<Integer> visitedCols, ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+
+    public static boolean[] getICsOnChangedNets(ArrayList<IC> list, Netlist netlist)
     {
-        boolean rowMatrix[][] = getRowConnectionsMatrix(b,wires,components);
-        boolean colMatrix[][] = getColumnConnectionsMatrix(b,wires,components);
-        boolean rowColMatrix[][] = getRowColumnConnectionsMatrix(b,wires,components);
-        
-        return updateHoleStates(holeID,newState,state,rowMatrix,colMatrix,rowColMatrix,visitedRows,visitedCols);
+        // Which ICs have a pin on a net merged or split since Netlist.clearChangedNets?
+        boolean affected[] = new boolean[list.size()];
+        for(int i=0; i<affected.length; i++)
+        {
+            int hids[] = list.get(i).getHoleIDs();
+            for(int j=0; j<hids.length && !affected[i]; j++) affected[i]=netlist.isNetChanged(netlist.getNetID(hids[j]));
+        }
+        return affected;
     }
-    
-    private static boolean updateHoleStates(int holeID, HoleState newState, HoleState state[], boolean rowMatrix[][], boolean colMatrix[][], boolean rowColMatrix[][], HashSet<Integer> visitedRows, HashSet<Integer> visitedCols)
+
+    public static int[][] condenseICsByDependency(boolean matrix[][])
     {
-        // Update only if NO_CONNECTION
-        //if(state[holeID-1]!=HoleState.NO_CONNECTION) return false;
+        // Returns the indices of the ICs of every strongly-connected component, in topological order
+        int n = matrix.length;
+        if(n==0) return new int[0][];
         
-        int ids[];
-        state[holeID-1]=newState;
-        if(isHoleInRow(holeID))
-        {
-            ids = getHolesInRow(getRowIDFromHoleID(holeID));
-        } else {
-            ids = getHolesInColumn(getColumnIDFromHoleID(holeID));
-        }
+        // Step-1: Find the strongly-connected components (Tarjan's algorithm, with an explicit call-stack)
+        int index[] = new int[n], low[] = new int[n], nextChild[] = new int[n];
+        int stack[] = new int[n], callStack[] = new int[n];
+        boolean onStack[] = new boolean[n];
+        int sp=0, counter=0;
+        ArrayList<int[]> found = new ArrayList<int[]>();
         
-        for(int i=0; i<ids.length; i++)
-        {
-            state[ids[i]-1]=newState;
-        }
+        for(int i=0; i<n; i++) index[i]=-1;
         
-        if(isHoleInRow(holeID))
+        for(int root=0; root<n; root++)
         {
-            int rid = getRowIDFromHoleID(holeID);
-            visitedRows.add(rid);
+            if(index[root]!=-1) continue;
             
-            //Utility.alert("ROWID="+rid);
+            int depth=0;
+            callStack[0]=root;
+            index[root]=low[root]=counter++;
+            stack[sp++]=root;
+            onStack[root]=true;
             
-            // scan row-connections
-            for(int i=0; i<rowMatrix[rid-1].length; i++)
+            while(depth>=0)
             {
-                if(i==rid-1) continue;
-                if(rowMatrix[rid-1][i])
+                int v = callStack[depth];
+                if(nextChild[v]<n)
                 {
-                    // has connection to (i+1)-th row                    
-                    if(!visitedRows.contains(i+1))
+                    int w = nextChild[v]++;
+                    if(!matrix[v][w]) continue;
+                    
+                    if(index[w]==-1)
                     {
-                        int frid = getFirstHoleIDInRow(i+1);
-                        updateHoleStates(frid, newState, state, rowMatrix, colMatrix, rowColMatrix, visitedRows, visitedCols);
+                        // visit neighbour
+                        index[w]=low[w]=counter++;
+                        stack[sp++]=w;
+                        onStack[w]=true;
+                        callStack[++depth]=w;
+                    } else if(onStack[w]) {
+                        low[v]=Math.min(low[v],index[w]);
                     }
-                }
-            }
-            
-            // scan row-col connections
-            for(int i=0; i<rowColMatrix[rid-1].length; i++)
-            {
-                if(rowColMatrix[rid-1][i])
-                {
-                    //Utility.alert("ROW has connection to "+(i+1)+" col");
-                    // has connection to (i+1)-th col
-                    if(!visitedCols.contains(i+1))
+                } else {
+                    if(low[v]==index[v])
                     {
-                        //Utility.alert("NOT VISITED");
+                        // v is the root of a component: pop it off the stack
+                        int size=0;
+                        while(stack[sp-1-size]!=v) size++;
+                        size++;
                         
-                        visitedCols.add(i+1);
-                        int fcid = getFirstHoleIDInColumn(i+1);
-                        updateHoleStates(fcid, newState, state, rowMatrix, colMatrix, rowColMatrix, visitedRows, visitedCols);
-                    }
-                }
-            }
-        } else {
-            int cid = getColumnIDFromHoleID(holeID);
-            visitedCols.add(cid);
-            
-            for(int i=0; i<colMatrix[cid-1].length; i++)
-            {
-                if(i==cid-1) continue;
-                if(colMatrix[cid-1][i])
-                {
-                    // has connection to (i+1)-th column                    
-                    if(!visitedCols.contains(i+1))
-                    {
-                        int fcid = getFirstHoleIDInColumn(i+1);
-                        updateHoleStates(fcid, newState, state, rowMatrix, colMatrix, rowColMatrix, visitedRows, visitedCols);
-                    }
-                }
-            }
-            
-            // scan row-col connections
-            for(int i=0; i<rowColMatrix.length; i++)
-            {
-                if(rowColMatrix[i][cid-1])
-                {
-                    // has connection to (i+1)-th row                    
-                    if(!visitedRows.contains(i+1))
-                    {
-                        visitedRows.add(i+1);
-                        int frid = getFirstHoleIDInRow(i+1);
-                        updateHoleStates(frid, newState, state, rowMatrix, colMatrix, rowColMatrix, visitedRows, visitedCols);
+                        int comp[] = new int[size];
+                        for(int k=0; k<size; k++)
+                        {
+                            comp[k]=stack[--sp];
+                            onStack[comp[k]]=false;
+                        }
+                        Arrays.sort(comp);
+                        found.add(comp);
                     }
+                    
+                    depth--;
+                    if(depth>=0) low[callStack[depth]]=Math.min(low[callStack[depth]],low[v]);
                 }
             }
         }
         
-        return true;
+        // Step-2: Tarjan's algorithm finds the components in reverse topological order
+        int components[][] = new int[found.size()][];
+        for(int c=0; c<components.length; c++) components[c]=found.get(components.length-1-c);
+        
+        return components;
     }
     
-    private static ArrayList<IC> sortICsByDependency(ArrayList<IC> list, ArrayList<Wire> wires, ArrayList<Resistor> resistors)
+    public static boolean[] areComponentsCyclic(int components[][], boolean matrix[][])
     {
-        // WARNING: Assuming only 1 breadboard exists
-        if(list.size()==0) return list;
-        
-        Breadboard b = list.get(0).getBase();
-        
-        if(conMatrix==null)         // speed-optimization, do not recalculate: conMatrix is set to null each time simulateCircuit is called [whenever circuit changes]
+        // A component has feedback if it has more than 1 IC, or if its only IC drives itself
+        boolean cyclic[] = new boolean[components.length];
+        for(int c=0; c<components.length; c++)
         {
-            conMatrix=getDirectHoleConnectionsMatrix(b,wires,resistors);
+            cyclic[c]=(components[c].length>1 || matrix[components[c][0]][components[c][0]]);
         }
-        
-        // Convert to array
-        IC array[] = new IC[list.size()];
-        for(int i=0; i<array.length; i++) array[i]=list.get(i);
-        
-        // Step-1: Create the adjacency matrix of all IC output->input connections
-        if(IODependencyMatrix==null)    // Speed-optimization
-        {            
-            IODependencyMatrix=new boolean[array.length][array.length];
-
-            for(int i=0; i<array.length; i++)
+        return cyclic;
+    }
+    
+    public static void printState(HoleStateVector state)
+    {
+        System.out.println();
+        for(int i=0; i<state.size(); i++) System.out.print(state.get(i).toString().charAt(0));
+        System.out.println();
+    }
+    
+    private static boolean drives(IC ic1, IC ic2, Netlist netlist)
+    {
+        // does an output pin of ic1 drive an input pin of ic2?
+        int pc1 = ic1.getPinCount(), pc2 = ic2.getPinCount();
+        for(int p1=1; p1<=pc1; p1++)
+        {
+            if(ic1.isInputPin(p1)) continue;
+            for(int p2=1; p2<=pc2; p2++)
             {
-                int pcI = array[i].getPinCount();
-
-                for(int j=0; j<array.length; j++)
-                {
-                    //if(i==j) continue;
-
-                    int pcJ = array[j].getPinCount();
-                    for(int pc1=1; pc1<=pcI; pc1++)
-                    {
-                        if(array[i].isInputPin(pc1)) continue;
-                        for(int pc2=1; pc2<=pcJ; pc2++)
-                        {
-                            if(array[j].isOutputPin(pc2)) continue;
-
-                            if(i==j && pc1==pc2) continue;              // can be same IC but cannot be same pin of the same IC simultaneously
-                            
-                            if(areConnectedInOrder(array[i],pc1,array[j],pc2,wires,resistors))
-                            {
-                                IODependencyMatrix[i][j]=true;
-                                isHalfCyclic=true;
-                            }
-                        }
-                    }
-                }
-            }
+                if(ic2.isOutputPin(p2)) continue;
 
+                if(ic1==ic2 && p1==p2) continue;            // can be same IC but cannot be same pin of the same IC simultaneously
 
-            // Check if cyclic
-            for(int i=0; i<IODependencyMatrix.length; i++)
-            {
-                for(int j=0; j<IODependencyMatrix[i].length; j++)
-                {
-                    if(IODependencyMatrix[i][j] && IODependencyMatrix[j][i])
-                    {
-                        isCyclic=true;
-                        return list;
-                    }
-                }
-            }
-        }
-        
-        // ------------ DIAGNOSTICS -------------
-        /*
-        for(int i=0; i<IODependencyMatrix.length; i++)
-        {
-            for(int j=0; j<IODependencyMatrix[i].length; j++)
-            {
-                System.out.print(IODependencyMatrix[i][j]+"\t");
-            }
-            System.out.println();
-        }
-        */
-        // ---------------------------------------
-        
-        
-        // Step-2: Compute in-degrees
-        int inDegree[]=new int[array.length];
-        for(int i=0; i<array.length; i++)
-        {
-            for(int j=0; j<array.length; j++)
-            {
-                if(IODependencyMatrix[i][j]) inDegree[j]++;
+                if(areConnectedInOrder(ic1,p1,ic2,p2,netlist)) return true;
             }
         }
-        
-        // Step-3: Initialize visited to 0, push into queue all those vertices which have indegree=0
-        int visitCounter=0;
-        HashSet<Integer> visited = new HashSet<Integer>(array.length);
-        ArrayList<IC> sorted = new ArrayList<IC>(list.size());
-        Queue<Integer> queue = new LinkedList<Integer>();
-        for(int i=0; i<inDegree.length; i++)
-        {
-            if(inDegree[i]==0) queue.add(i);
-        }
-        
-        // Step-4
-        while(!queue.isEmpty())
-        {
-            int index=queue.remove();                           // pop from queue
-            visitCounter++;                                     // increment visited counter
-            visited.add(index);                                 // add the popped index to hashset
-            sorted.add(list.get(index));                        // add to sorted list
-            
-            for(int j=0; j<IODependencyMatrix[index].length; j++)
-            {
-                if(IODependencyMatrix[index][j] && !visited.contains(j)) // neighbour
-                {
-                    inDegree[j]--;                              // decrement in-degree of neighbour
-                    if(inDegree[j]==0) queue.add(j);            // if in-degree reaches 0, add it to queue
-                }
-            }
-        }
-        
-        if(visitCounter!=array.length)
-            return list;                                        // Cyclic dependency, so return the original list itself
-        else
-            return sorted;                                      // Topological sort complete, return the sorted list
+        return false;
     }
-    
-    private static boolean areConnectedInOrder(IC ic1, int pin1, IC ic2, int pin2, ArrayList<Wire> wires, ArrayList<Resistor> resistors)
+
+    private static boolean areConnectedInOrder(IC ic1, int pin1, IC ic2, int pin2, Netlist netlist)
     {
         // Preconditions:
         // 1. pin1 of ic1 is output pin
@@ -583,104 +221,14 @@ class Simulation
         
         if(b1!=b2) return false;    // FOR NOW DO NOT THINK OF MORE THAN 1 BREADBOARD: TOO COMPLICATED!
         
-        return areHolesConnected(b1,hole1,hole2,wires);
+        return areHolesConnected(b1,hole1,hole2,netlist);
     }
     
-    private static boolean areHolesConnected(Breadboard b, int hole1, int hole2, ArrayList<Wire> wires)
+    private static boolean areHolesConnected(Breadboard b, int hole1, int hole2, Netlist netlist)
     {
         if(hole1==hole2) return true;
-
-        // Perform Depth-First-Search
-        Stack<Integer> stack = new Stack<Integer>();
-        HashSet<Integer> visited = new HashSet<Integer>(Breadboard.MAX_HOLES);
-        
-        stack.push(hole1);
-        while(!stack.isEmpty())
-        {
-            int holeID = stack.pop();
-            if(holeID==hole2) return true;
-            
-            visited.add(holeID);
-            for(int i=0; i<conMatrix[holeID-1].length; i++)
-            {
-                if(conMatrix[holeID-1][i])
-                {
-                    if(!visited.contains(i+1)) stack.push(i+1);
-                }
-            }
-        }
-        
-        return false;
-    }
-    
-    private static boolean[][] getDirectHoleConnectionsMatrix(Breadboard b, ArrayList<Wire> wires, ArrayList<Resistor> resistors)
-    {
-        boolean adjMatrix[][]=new boolean[Breadboard.MAX_HOLES][Breadboard.MAX_HOLES];
-        
-        for(int i=0; i<Breadboard.MAX_HOLES; i++)
-        {
-            for(int j=i; j<Breadboard.MAX_HOLES; j++)
-            {
-                if(i==j)
-                    adjMatrix[i][j]=true;
-                else
-                    adjMatrix[i][j]=areHolesDirectlyConnectedInternally(i+1,j+1) || areHolesDirectlyConnectedViaWire(b,i+1,j+1,wires) || areHolesDirectlyConnectedViaResistor(b,i+1,j+1,resistors);
-                
-                adjMatrix[j][i]=adjMatrix[i][j];
-            }            
-        }
+        if(netlist.getBase()!=b) return false;
         
-        return adjMatrix;
-    }
-       
-    private static boolean areHolesDirectlyConnectedInternally(int hole1, int hole2)
-    {
-        if(hole1==hole2) {
-            return true;
-        } else if(isHoleInRow(hole1) && isHoleInRow(hole2)) {
-            int rid1 = getRowIDFromHoleID(hole1);
-            int rid2 = getRowIDFromHoleID(hole2);
-            
-            return(rid1==rid2);
-        } else if(!isHoleInRow(hole1) && !isHoleInRow(hole2)) {
-            int cid1 = getColumnIDFromHoleID(hole1);
-            int cid2 = getColumnIDFromHoleID(hole2);
-            
-            return(cid1==cid2);
-        } else {
-            return false;
-        }
-    }
-    
-    private static boolean areHolesDirectlyConnectedViaWire(Breadboard b, int hole1, int hole2, ArrayList<Wire> wires)
-    {
-        int wc = wires.size();
-        
-        for(int i=0; i<wc; i++)
-        {
-            Wire w = wires.get(i);
-            if(w.getSource()!=b || w.getSink()!=b) continue;
-            
-            int src = w.getSourceHoleID(), tar = w.getSinkHoleID();
-            if((src==hole1 && tar==hole2) || (src==hole2 && tar==hole1)) return true;
-        }
-        
-        return false;
-    }
-    
-    private static boolean areHolesDirectlyConnectedViaResistor(Breadboard b, int hole1, int hole2, ArrayList<Resistor> resistors)
-    {
-        int rc = resistors.size();
-        
-        for(int i=0; i<rc; i++)
-        {
-            Resistor r = resistors.get(i);
-            if(r.getBase()!=b) continue;
-            
-            int src = r.getSourceHoleID(), tar = r.getSinkHoleID();
-            if((src==hole1 && tar==hole2) || (src==hole2 && tar==hole1)) return true;
-        }
-        
-        return false;
+        return netlist.areHolesConnected(hole1,hole2);
     }
 }
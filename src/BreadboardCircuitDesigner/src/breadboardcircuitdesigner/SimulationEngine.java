@@ -0,0 +1,616 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import static breadboardcircuitdesigner.CircuitUtility.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class SimulationEngine
+{
+    /*
+            SIMULATION ENGINE
+            ------------------------------------------------
+            One engine simulates one circuit. Everything that is kept between simulations (netlist,
+            IC dependencies, session, compiled circuit) belongs to the engine, so several circuits can be
+            simulated at the same time, one engine per thread. The stateless parts live in Simulation.
+
+            THREAD CONFINEMENT
+            ------------------------------------------------
+            An engine is not thread-safe: the edit events and simulate/sweepTruthTable must all be called
+            from the thread owning the engine (the EDT for the circuit being edited). Only these 2 may be
+            called from any thread:
+
+            stop        --->    cancels the simulation in progress (the circuit resumes from where it stopped)
+            isRunning   --->    is a simulation in progress?
+
+            FUNCTION DEPENDENCIES IN THIS MODULE
+            ------------------------------------------------
+            simulate        ---> settle ---> SimulationSession.create [when the circuit has been edited]
+                            |           |
+                            |           ---> getHoleStates
+                            |
+                            ---> SimulationSession.turnOnOffLEDs
+
+            runCycles       ---> settleCircuit, then (triggerNextEdges ---> settleCircuit) for every cycle
+
+            rewind          ---> CheckpointHistory.restore ---> unpackState
+                            |
+                            ---> settleCircuit, then (triggerNextEdges ---> settleCircuit) up to the cycle asked for
+
+            advanceClocks   ---> EventScheduler.skip [when more than maxLag is to be done]
+                            |
+                            ---> (EventScheduler.step ---> settleCircuit) for every clock edge on the way
+
+            triggerNextEdges---> EventScheduler.step
+                            |
+                            ---> SimulationSession.triggerClocks [when no clock has a frequency]
+
+            takeSnapshot    ---> SimulationSnapshot [when the hole states have changed since the last one]
+
+            sweepTruthTable ---> SimulationSession.create [when the circuit has been edited]
+                            |
+                            ---> getHoleStates
+                            |
+                            ---> TruthTableSweep.run ---> CompiledCircuit.runBitParallel
+
+            getHoleStates   ---> Netlist.extract
+                            |
+                            ---> compileCircuit [when the nets or the set of ICs change]
+                            |
+                            ---> SimulationSession.driveSupplyNets ---> CompiledCircuit.driveNet
+                            |
+                            ---> driveForcedHoles ---> CompiledCircuit.driveNet
+                            |
+                            ---> CompiledCircuit.run [or CompiledCircuit.runTimed, in timed mode]
+
+            compileCircuit  ---> Simulation.getIODependencyMatrix [when the set of ICs changes]
+                            |
+                            ---> Simulation.updateIODependencyMatrix [when only some nets change]
+                            |
+                            ---> Simulation.condenseICsByDependency
+                            |
+                            ---> CompiledCircuit.patch [when only some nets change, and the loops still hold]
+                            |
+                            ---> CompiledCircuit.compile [otherwise]
+
+            EDIT EVENTS
+            ------------------------------------------------
+            The netlist is extracted once and then patched by the edit events below,
+            so that an edit only costs time proportional to the nets it touches.
+            The IC dependency matrix is recomputed only when the set of ICs changes: after a wire or
+            resistor edit, only the rows and columns of the ICs with pins on the changed nets are,
+            and the compiled circuit re-evaluates only those ICs (except in timed mode, which starts afresh).
+            The session (breadboard, power supplies, LEDs) is recreated only when a component or an
+            external wire is added or removed. A simulation step then allocates nothing.
+
+            wireAdded / wireRemoved             --->    Netlist.addConnection / Netlist.removeConnection
+            componentAdded / componentRemoved   --->    Netlist.addConnection / Netlist.removeConnection (resistors)
+                                                |
+                                                --->    invalidate IC dependencies (ICs)
+                                                |
+                                                --->    invalidateProgram (ICs, and wires to a power supply)
+                                                |
+                                                --->    invalidate the session (all components, and wires to a power supply)
+            memoryLoaded                        --->    IC.setMemory, then invalidateProgram (every IC is evaluated afresh)
+            reset                               --->    start afresh on the next simulation (e.g. when a file is opened)
+
+            FORCED HOLES
+            ------------------------------------------------
+            forceHole drives a breadboard hole from outside the circuit (e.g. the stimulus of HeadlessSimulator),
+            exactly as if a power supply output were wired to it. Forcing NO_CONNECTION leaves the hole floating.
+            Forced holes survive edits and recompilation, but not reset.
+
+            CLOCKS
+            ------------------------------------------------
+            The clocks of the power supplies are stepped by an EventScheduler, in simulated time: each clock
+            has an edge every half-period of its own frequency, delayed by its phase, so a circuit with several
+            clocks is stepped the same way on every run, as fast as the host allows. A cycle of runCycles (and of
+            HeadlessSimulator) is the next time any clock has an edge. When no clock has a frequency, every clock
+            is triggered at once, as one tick of a common clock.
+
+            TIMED MODE
+            ------------------------------------------------
+            setTimedMode(true) settles the circuit with the propagation delays of the ICs (see
+            CompiledCircuit.runTimed and TimingWheel), so that glitches and races show. Switching the mode
+            recompiles the circuit. The truth-table sweep is always untimed.
+
+            CHECKPOINTS
+            ------------------------------------------------
+            Every CHECKPOINT_INTERVAL cycles (clock steps), the settled state is packed (clock edges, clock levels
+            of the power supplies, hole states, net states and IC storage) into a CheckpointHistory. rewind
+            restores the last checkpoint before a cycle, in time proportional to the state, and replays the
+            cycles from there on, so a bug can be inspected again without rerunning from power-on. Replaying
+            gives the same states only if nothing else changed the circuit: the history is cleared by every
+            edit event, forced value, change of the clocks, and by clock periods dropped to catch up.
+
+            WAVEFORMS
+            ------------------------------------------------
+            setRecorder attaches a WaveformRecorder, which samples its probes after every settle, at the
+            simulated time of the clocks. When no clock has a frequency, every tick of the common clock counts
+            as 1 ns. In timed mode, only the settled states are recorded, not the changes within a settle.
+    */
+
+    public static final int MAX_SWEEPS_PER_IC = 1000;      // safety bound for feedback loops whose states never repeat
+    public static final long MAX_TIMED_NANOS = 10000;       // safety bound for a circuit which never stops switching (timed mode)
+    public static final int CHECKPOINT_INTERVAL = 100;      // cycles
+    public static final int MAX_CHECKPOINTS = 1024;
+
+    private Netlist netlist;
+    private boolean IODependencyMatrix[][];
+    private int dependencyVersion;
+
+    private SimulationSession session;          // null = must be re-created
+    private CompiledCircuit program;            // null = must be recompiled
+
+    private int forcedHoleIDs[] = new int[4];
+    private HoleState forcedStates[] = new HoleState[4];
+    private int forcedCount;
+
+    private final EventScheduler scheduler = new EventScheduler();
+
+    private boolean timed;
+    private final TimingWheel wheel = new TimingWheel();
+
+    private WaveformRecorder recorder;          // null = not recording
+    private long ticks;                         // of the common clock (see triggerNextEdges)
+
+    private long cycle;                         // clock steps since the last reset
+    private final CheckpointHistory history = new CheckpointHistory(CHECKPOINT_INTERVAL,MAX_CHECKPOINTS);
+    private long packedState[] = new long[0];
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile boolean running;
+
+    public void stop()
+    {
+        cancelled.set(true);
+    }
+
+    public boolean isRunning() { return running; }
+
+    public int getOscillationPeriod()
+    {
+        // in sweeps of the feedback loop, 0 if the circuit settled in the last simulation
+        return(program==null ? 0 : program.getOscillationPeriod());
+    }
+
+    public boolean isTimedMode() { return timed; }
+    public long getSimulatedTime() { return scheduler.getTime(); }
+    public long getDroppedEdgeCount() { return scheduler.getDroppedEdgeCount(); }
+    public WaveformRecorder getRecorder() { return recorder; }
+    public void setRecorder(WaveformRecorder r) { recorder=r; }
+    public long getCycle() { return cycle; }
+    public long getFirstCheckpointCycle() { return history.getFirstCycle(); }
+
+    public void reset()
+    {
+        forcedCount=0;
+        scheduler.reset();
+        ticks=0;
+        cycle=0;
+        session=null;
+        netlist=null;
+        IODependencyMatrix=null;
+        invalidateProgram();
+    }
+
+    public void setTimedMode(boolean on)
+    {
+        if(on==timed) return;
+        timed=on;
+        invalidateProgram();            // start afresh, in the new mode
+    }
+
+    public void forceHole(int holeID, HoleState state)
+    {
+        for(int i=0; i<forcedCount; i++)
+        {
+            if(forcedHoleIDs[i]==holeID)
+            {
+                if(forcedStates[i]!=state) history.clear();
+                forcedStates[i]=state;
+                return;
+            }
+        }
+        history.clear();
+
+        if(forcedCount==forcedHoleIDs.length)
+        {
+            int h[] = new int[forcedCount*2];
+            HoleState f[] = new HoleState[forcedCount*2];
+            System.arraycopy(forcedHoleIDs,0,h,0,forcedCount);
+            System.arraycopy(forcedStates,0,f,0,forcedCount);
+            forcedHoleIDs=h;
+            forcedStates=f;
+        }
+        forcedHoleIDs[forcedCount]=holeID;
+        forcedStates[forcedCount]=state;
+        forcedCount++;
+    }
+
+    // ------------------------------------------
+    // Edit events
+    // ------------------------------------------
+    public void wireAdded(Wire w)
+    {
+        history.clear();
+        if(w.getSource()!=w.getSink())
+        {
+            // power supply connections have changed
+            session=null;
+            invalidateProgram();
+            return;
+        }
+
+        if(netlist==null || w.getSource()!=netlist.getBase()) return;
+        netlist.addConnection(w.getSourceHoleID(), w.getSinkHoleID());
+    }
+
+    public void wireRemoved(Wire w)
+    {
+        history.clear();
+        if(w.getSource()!=w.getSink())
+        {
+            // power supply connections have changed
+            session=null;
+            invalidateProgram();
+            return;
+        }
+
+        if(netlist==null || w.getSource()!=netlist.getBase()) return;
+        netlist.removeConnection(w.getSourceHoleID(), w.getSinkHoleID());
+    }
+
+    public void componentAdded(CircuitComponent c)
+    {
+        history.clear();
+        session=null;
+        if(c.getType()==ComponentType.IC)
+        {
+            IODependencyMatrix=null;
+            invalidateProgram();
+        } else if(c.getType()==ComponentType.RESISTOR && netlist!=null) {
+            Resistor r = (Resistor)c;
+            if(r.getBase()==netlist.getBase()) netlist.addConnection(r.getSourceHoleID(), r.getSinkHoleID());
+        }
+    }
+
+    public void componentRemoved(CircuitComponent c)
+    {
+        history.clear();
+        session=null;
+        if(c.getType()==ComponentType.IC)
+        {
+            IODependencyMatrix=null;
+            invalidateProgram();
+        } else if(c.getType()==ComponentType.RESISTOR && netlist!=null) {
+            Resistor r = (Resistor)c;
+            if(r.getBase()==netlist.getBase()) netlist.removeConnection(r.getSourceHoleID(), r.getSinkHoleID());
+        }
+    }
+
+    public void memoryLoaded(IC ic, MemoryBank m)
+    {
+        // new contents for a ROM or RAM (see MemoryBank.load): the checkpoints no longer apply
+        ic.setMemory(m);
+        invalidateProgram();
+    }
+
+    // ------------------------------------------
+    // Simulation
+    // ------------------------------------------
+    public void simulate(ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+    {
+        // Settles the circuit, and shows the result on the breadboard and the LEDs straight away
+        if(!settle(components,wires)) return;
+
+        Breadboard b = session.getBreadboard();
+        HoleStateVector state = session.getWorkingState();
+        if(state.differsFrom(b.getHoleStateVector())) b.getHoleStateVector().copyFrom(state);
+        session.turnOnOffLEDs(state);
+    }
+
+    public boolean settle(ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+    {
+        // Settles the circuit without touching the components (see takeSnapshot), false if it is not powered
+        cancelled.set(false);
+        return settleCircuit(components,wires);
+    }
+
+    public int runCycles(ArrayList<CircuitComponent> components, ArrayList<Wire> wires, int cycles, int stopHoleID, HoleState stopState)
+    {
+        // As fast as possible: triggers the clocks with the next edge and settles the circuit, 'cycles' times,
+        // without touching the components (see takeSnapshot). Stops early when stop() is called, when the power
+        // goes off, or as soon as hole #stopHoleID (0 = none) is in 'stopState'. Returns the number of cycles run.
+        cancelled.set(false);
+        if(!settleCircuit(components,wires)) return 0;
+
+        int n=0;
+        while(n<cycles && !cancelled.get())
+        {
+            triggerNextEdges();
+            if(!settleCircuit(components,wires)) break;
+            n++;
+
+            if(stopHoleID>0 && session.getWorkingState().get(stopHoleID-1)==stopState) break;
+        }
+        return n;
+    }
+
+    public boolean stepClocks(ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+    {
+        // Triggers the clocks with the next edge, without settling the circuit (see simulate), false if it is not powered
+        if(session==null) session=SimulationSession.create(components,wires);
+        if(!session.isPowered()) return false;
+
+        triggerNextEdges();
+        return true;
+    }
+
+    public int advanceClocks(ArrayList<CircuitComponent> components, ArrayList<Wire> wires, long nanos, long maxLag)
+    {
+        // Moves the simulated time forward by 'nanos', settling the circuit after every clock edge on the way,
+        // without touching the components (see takeSnapshot). When more than 'maxLag' is to be done, the clocks
+        // first skip whole periods (see EventScheduler.skip). Returns the number of edges stepped: when stop()
+        // is called, the rest of the time is lost.
+        cancelled.set(false);
+        if(session==null) session=SimulationSession.create(components,wires);
+        if(scheduler.sync(session.getSupplies())) history.clear();
+
+        long target = scheduler.getTime()+nanos;
+        if(nanos>maxLag && scheduler.skip(target-maxLag)>0) history.clear();     // cannot be replayed
+
+        int n=0;
+        while(scheduler.getNextEventTime()<=target)
+        {
+            if(cancelled.get()) return n;
+            n += scheduler.step(true);
+            cycle++;
+            settleCircuit(components,wires);
+        }
+        scheduler.skip(target);         // no edge left on the way: only moves the time
+        return n;
+    }
+
+    public long rewind(ArrayList<CircuitComponent> components, ArrayList<Wire> wires, long targetCycle)
+    {
+        // Restores the last checkpoint at or before 'targetCycle' and replays the cycles from there on, without
+        // touching the components (see takeSnapshot). Returns the cycle reached (short of the target when stop()
+        // is called), or -1 if there is no checkpoint that early.
+        cancelled.set(false);
+        long c = history.find(targetCycle);
+        if(c<0 || session==null || program==null || history.getStateLength()!=getPackedStateLength()) return -1;
+
+        if(packedState.length<history.getStateLength()) packedState = new long[history.getStateLength()];
+        history.restore(c,packedState);
+        unpackState(packedState);
+        cycle=c;
+
+        if(!settleCircuit(components,wires)) return -1;
+        while(cycle<targetCycle && !cancelled.get())
+        {
+            triggerNextEdges();
+            if(!settleCircuit(components,wires)) break;
+        }
+        return cycle;
+    }
+
+    private void triggerNextEdges()
+    {
+        if(scheduler.sync(session.getSupplies())) history.clear();
+        if(scheduler.step(true)==0)
+        {
+            session.triggerClocks();
+            ticks++;
+        }
+        cycle++;
+    }
+
+    private boolean settleCircuit(ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+    {
+        // Step-1: Find the only breadboard which is connected to power supply
+        if(session==null) session=SimulationSession.create(components,wires);
+        if(!session.isPowered())        // if no such breadboard then abort
+        {
+            invalidateProgram();        // start afresh when power comes back
+            return false;
+        }
+
+        // Step-2: get the holestates
+        running=true;
+        try
+        {
+            getHoleStates(session.getBreadboard(),components,wires);
+        } finally {
+            running=false;
+        }
+
+        if(recorder!=null) recorder.sample(scheduler.getTime()+ticks,session.getWorkingState());
+        if(history.isDue(cycle)) takeCheckpoint();
+        return true;
+    }
+
+    // ------------------------------------------
+    // Checkpoints
+    // ------------------------------------------
+    private int getPackedStateLength()
+    {
+        // ticks | clock edges | clock levels (1 bit per power supply) | hole states | nets and IC storage
+        return(1 + scheduler.getPackedStateLength() + (session.getSupplies().length+63)/64
+                + session.getWorkingState().getPackedLength() + program.getPackedStateLength());
+    }
+
+    private void takeCheckpoint()
+    {
+        int n = getPackedStateLength();
+        if(packedState.length<n) packedState = new long[n];
+
+        int pos=0;
+        packedState[pos++] = ticks;
+        scheduler.packState(packedState,pos);
+        pos += scheduler.getPackedStateLength();
+
+        PowerSupply supplies[] = session.getSupplies();
+        for(int w=0; w<(supplies.length+63)/64; w++) packedState[pos+w]=0;
+        for(int i=0; i<supplies.length; i++)
+        {
+            if(supplies[i].isClockPulseHigh()) packedState[pos+(i>>>6)] |= 1L << (i & 63);
+        }
+        pos += (supplies.length+63)/64;
+
+        session.getWorkingState().pack(packedState,pos);
+        pos += session.getWorkingState().getPackedLength();
+        program.packState(packedState,pos);
+
+        history.add(cycle,packedState,n);
+    }
+
+    private void unpackState(long s[])
+    {
+        int pos=0;
+        ticks = s[pos++];
+        scheduler.unpackState(s,pos);
+        pos += scheduler.getPackedStateLength();
+
+        PowerSupply supplies[] = session.getSupplies();
+        for(int i=0; i<supplies.length; i++) supplies[i].setClockPulseHigh((s[pos+(i>>>6)] & (1L << (i & 63)))!=0);
+        pos += (supplies.length+63)/64;
+
+        session.getWorkingState().unpack(s,pos);
+        pos += session.getWorkingState().getPackedLength();
+        program.unpackState(s,pos);
+        wheel.clear();                  // the pending changes of timed mode are not kept
+    }
+
+    public SimulationSnapshot takeSnapshot(SimulationSnapshot previous)
+    {
+        // Returns 'previous' if the last settle() shows nothing new, so a quiet clock tick allocates nothing
+        if(session==null || !session.isPowered()) return previous;
+
+        int period = getOscillationPeriod();
+        if(previous!=null && previous.isSameAs(session,period)) return previous;
+        return new SimulationSnapshot(session,period);
+    }
+
+    public TruthTableSweep sweepTruthTable(ArrayList<CircuitComponent> components, ArrayList<Wire> wires, int inputHoleIDs[], int outputHoleIDs[])
+    {
+        // Applies every combination of values to the input holes, and records the output holes for each of them
+        cancelled.set(false);
+
+        if(session==null) session=SimulationSession.create(components,wires);
+        if(!session.isPowered()) return null;
+
+        if(inputHoleIDs.length>TruthTableSweep.MAX_INPUTS)
+        {
+            Utility.alert("Cannot sweep more than "+TruthTableSweep.MAX_INPUTS+" inputs.");
+            return null;
+        }
+
+        running=true;
+        try
+        {
+            getHoleStates(session.getBreadboard(),components,wires);   // compiles the circuit, and drives the power supply nets
+            if(!program.isLevelized() || !program.isCombinational())
+            {
+                Utility.alert("Truth-table sweeps need a circuit of combinational ICs without feedback.");
+                return null;
+            }
+
+            int inputNets[] = new int[inputHoleIDs.length];
+            for(int i=0; i<inputNets.length; i++) inputNets[i]=netlist.getNetID(inputHoleIDs[i]);
+
+            int outputNets[] = new int[outputHoleIDs.length];
+            for(int i=0; i<outputNets.length; i++) outputNets[i]=netlist.getNetID(outputHoleIDs[i]);
+
+            return TruthTableSweep.run(program,inputNets,outputNets);
+        } finally {
+            running=false;
+        }
+    }
+
+    private HoleStateVector getHoleStates(Breadboard b, ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+    {
+        if(netlist==null || netlist.getBase()!=b)       // speed-optimization, do not recalculate: netlist is patched by the edit events
+        {
+            netlist=Netlist.extract(b,wires,session.getResistors());
+            IODependencyMatrix=null;
+            invalidateProgram();
+        }
+
+        if(program==null || program.getVersion()!=netlist.getVersion())
+        {
+            program=compileCircuit(b,components);
+            history.clear();            // the states are laid out after the nets of the old program
+        }
+
+        /*
+            STEPS
+            ----------------
+            1.  Drive the nets connected to VCC/GND/clock of the power supplies: only a changed value raises an event
+
+            2.  Run the compiled circuit: evaluate the ICs having an input on a changed net,
+                until no net changes any more (or until stopped)
+
+            3.  Ignore other connected breadboards (for now): TOO COMPLICATED!
+        */
+
+        // Step-1: Scan connected power supplies (and the forced holes)
+        session.driveSupplyNets(netlist,program);
+        driveForcedHoles();
+
+        // Step-2: Propagate (an oscillating loop is stopped as soon as one of its states repeats)
+        if(timed)
+            program.runTimed(wheel,MAX_TIMED_NANOS,cancelled);
+        else
+            program.run(MAX_SWEEPS_PER_IC,cancelled);
+
+        // Expand the net values to the holes
+        HoleStateVector state = session.getWorkingState();
+        program.expand(netlist.getHoleToNet(),state);
+
+        return state;
+    }
+
+    private void driveForcedHoles()
+    {
+        for(int i=0; i<forcedCount; i++) program.driveNet(netlist.getNetID(forcedHoleIDs[i]),forcedStates[i]);
+    }
+
+    private void invalidateProgram()
+    {
+        program=null;
+        history.clear();
+        wheel.clear();                  // the pending changes are on the nets of the old program
+    }
+
+    private CompiledCircuit compileCircuit(Breadboard b, ArrayList<CircuitComponent> components)
+    {
+        ArrayList<IC> ics = getICsOn(b,components);
+
+        // Speed-optimization: the changed nets are those since the matrix (and the program, if any) was last brought up to date
+        boolean affected[] = null;
+        if(IODependencyMatrix==null || IODependencyMatrix.length!=ics.size())
+        {
+            IODependencyMatrix=Simulation.getIODependencyMatrix(ics,netlist);
+        } else if(dependencyVersion!=netlist.getVersion()) {
+            affected=Simulation.getICsOnChangedNets(ics,netlist);
+            Simulation.updateIODependencyMatrix(IODependencyMatrix,ics,affected,netlist);
+        }
+        dependencyVersion=netlist.getVersion();
+
+        int sccs[][] = Simulation.condenseICsByDependency(IODependencyMatrix);
+        boolean cyclic[] = Simulation.areComponentsCyclic(sccs,IODependencyMatrix);
+
+        CompiledCircuit p = program;
+        if(p==null || affected==null || timed || !p.patch(ics,sccs,cyclic,IODependencyMatrix,affected,netlist))
+            p=CompiledCircuit.compile(ics,sccs,cyclic,netlist);
+
+        netlist.clearChangedNets();
+        return p;
+    }
+}
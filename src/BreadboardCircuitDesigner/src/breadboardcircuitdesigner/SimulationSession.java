@@ -0,0 +1,193 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import static breadboardcircuitdesigner.BreadboardUtility.*;
+import static breadboardcircuitdesigner.CircuitUtility.*;
+
+import java.util.ArrayList;
+
+class SimulationSession
+{
+    /*
+            SIMULATION SESSION
+            ------------------------------------------------
+            Everything a simulation step needs to know about the circuit, other than the ICs and nets
+            (see CompiledCircuit and Netlist), looked up once and kept until the circuit is edited:
+
+            1.  The breadboard connected to a power supply, and the power supplies connected to it
+            2.  The breadboard holes wired to every power supply output
+            3.  The LEDs and 7-segment LEDs on the breadboard, with their hole IDs
+            4.  The working hole-state vector
+
+            With the session in place, a simulation step allocates nothing after warm-up.
+    */
+
+    private static final String SEGMENTS = "abcdefg.";
+
+    private Breadboard breadboard;              // null if no breadboard is connected to a power supply
+    private PowerSupply supplies[];
+    private int supplyHoleIDs[][];              // 3 per power supply, 0 if that output is not wired to the breadboard
+    private ArrayList<Resistor> resistors;
+
+    private LED leds[];
+    private SevenSegmentLED displays[];
+    private int segmentHoleIDs[][];             // 8 per 7-segment LED, in the order "abcdefg."
+    private int commonHoleIDs[][];              // 2 per 7-segment LED
+
+    private HoleStateVector workingState;
+
+    private SimulationSession() {}
+
+    public Breadboard getBreadboard() { return breadboard; }
+    public PowerSupply[] getSupplies() { return supplies; }
+    public ArrayList<Resistor> getResistors() { return resistors; }
+    public HoleStateVector getWorkingState() { return workingState; }
+    public LED[] getLEDs() { return leds; }
+    public SevenSegmentLED[] getDisplays() { return displays; }
+
+    // Factory method
+    public static SimulationSession create(ArrayList<CircuitComponent> components, ArrayList<Wire> wires)
+    {
+        //  WARNING: This function assumes that there is only 1 breadboard
+        SimulationSession s = new SimulationSession();
+        s.resistors = new ArrayList<Resistor>();
+        for(int i=0; i<components.size(); i++)
+        {
+            if(components.get(i).getType()==ComponentType.RESISTOR) s.resistors.add((Resistor)components.get(i));
+        }
+        s.workingState = new HoleStateVector(Breadboard.MAX_HOLES);
+
+        // Step-1: Find the only breadboard which is connected to power supply
+        int cc = components.size();
+        for(int i=0; i<cc && s.breadboard==null; i++)
+        {
+            if(components.get(i).getType()!=ComponentType.BREADBOARD) continue;
+
+            Breadboard b = (Breadboard)components.get(i);
+            if(hasBreadboardPower(b,components,wires)) s.breadboard=b;
+        }
+
+        if(s.breadboard==null)
+        {
+            s.supplies = new PowerSupply[0];
+            s.leds = new LED[0];
+            s.displays = new SevenSegmentLED[0];
+            return s;
+        }
+
+        // Step-2: Power supplies, and the holes wired to them
+        ArrayList<PowerSupply> ps = new ArrayList<PowerSupply>();
+        ArrayList<CircuitComponent> external = getExternalConnectedComponents(s.breadboard,wires,components);
+        int ec = external.size();
+        for(int i=0; i<ec; i++)
+        {
+            if(external.get(i).getType()==ComponentType.POWER_SUPPLY) ps.add((PowerSupply)external.get(i));
+        }
+
+        s.supplies = new PowerSupply[ps.size()];
+        s.supplyHoleIDs = new int[ps.size()][];
+        for(int i=0; i<s.supplies.length; i++)
+        {
+            s.supplies[i] = ps.get(i);
+            s.supplyHoleIDs[i] = getPowerSupplyTargetHoleIDs(s.supplies[i],s.breadboard,wires);
+        }
+
+        // Step-3: LEDs and 7-segment LEDs on this breadboard
+        ArrayList<LED> ledList = new ArrayList<LED>();
+        ArrayList<SevenSegmentLED> displayList = new ArrayList<SevenSegmentLED>();
+        for(int i=0; i<cc; i++)
+        {
+            CircuitComponent c = components.get(i);
+            if(c.getBase()!=s.breadboard) continue;
+
+            if(c.getType()==ComponentType.LED)
+                ledList.add((LED)c);
+            else if(c.getType()==ComponentType.SEVEN_SEGMENT_LED)
+                displayList.add((SevenSegmentLED)c);
+        }
+
+        s.leds = ledList.toArray(new LED[ledList.size()]);
+        s.displays = displayList.toArray(new SevenSegmentLED[displayList.size()]);
+        s.segmentHoleIDs = new int[s.displays.length][SEGMENTS.length()];
+        s.commonHoleIDs = new int[s.displays.length][];
+        for(int i=0; i<s.displays.length; i++)
+        {
+            for(int j=0; j<SEGMENTS.length(); j++) s.segmentHoleIDs[i][j]=s.displays[i].getHoleID(SEGMENTS.charAt(j));
+            s.commonHoleIDs[i]=s.displays[i].getCommonHoleIDs();
+        }
+
+        return s;
+    }
+
+    public boolean isPowered()
+    {
+        if(breadboard==null || supplies.length==0) return false;
+        for(int i=0; i<supplies.length; i++)
+        {
+            if(!supplies[i].isPoweredOn()) return false;
+        }
+        return true;
+    }
+
+    public void triggerClocks()
+    {
+        for(int i=0; i<supplies.length; i++) supplies[i].trigger();
+    }
+
+    public void driveSupplyNets(Netlist netlist, CompiledCircuit program)
+    {
+        for(int i=0; i<supplies.length; i++)
+        {
+            for(int j=0; j<3; j++)
+            {
+                int hid = supplyHoleIDs[i][j];
+                if(hid>0) program.driveNet(netlist.getNetID(hid),supplies[i].getOutputFromHole(j+1));
+            }
+        }
+    }
+
+    public boolean isLEDLit(int index, HoleStateVector state)
+    {
+        HoleState anodeState = state.get(leds[index].getAnodeHoleID()-1);
+        HoleState cathodeState = state.get(leds[index].getCathodeHoleID()-1);
+
+        return(anodeState==HoleState.HIGH && cathodeState==HoleState.LOW);
+    }
+
+    public int getLitSegments(int index, HoleStateVector state)
+    {
+        // bit #j is set if segment "abcdefg.".charAt(j) of 7-segment LED #index is lit
+        SevenSegmentLED led = displays[index];
+        HoleState com1 = state.get(commonHoleIDs[index][0]-1);
+        HoleState com2 = state.get(commonHoleIDs[index][1]-1);
+
+        // common holes must be grounded (common cathode) or at VCC (common anode)
+        HoleState common = (led.isCommonCathode() ? HoleState.LOW : HoleState.HIGH);
+        if(com1!=common || com2!=common) return 0;
+
+        HoleState lit = (led.isCommonCathode() ? HoleState.HIGH : HoleState.LOW);
+        int segments = 0;
+        for(int j=0; j<SEGMENTS.length(); j++)
+        {
+            if(state.get(segmentHoleIDs[index][j]-1)==lit) segments|=(1<<j);
+        }
+        return segments;
+    }
+
+    public void turnOnOffLEDs(HoleStateVector state)
+    {
+        for(int i=0; i<leds.length; i++)
+        {
+            if(isLEDLit(i,state))
+                leds[i].turnON();
+            else
+                leds[i].turnOFF();
+        }
+
+        for(int i=0; i<displays.length; i++) displays[i].turnOnOffSegments(getLitSegments(i,state));
+    }
+}
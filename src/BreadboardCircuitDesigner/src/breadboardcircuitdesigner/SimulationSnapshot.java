@@ -0,0 +1,65 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+class SimulationSnapshot
+{
+    /*
+            SIMULATION SNAPSHOT
+            ------------------------------------------------
+            The visible result of one settled simulation step: the hole states of the powered breadboard,
+            and which LEDs and 7-segment LED segments are lit. A snapshot is never modified once made,
+            so the simulation thread can hand it over to the event dispatch thread (EDT) through a volatile
+            reference, and the EDT copies it into the components (see apply) just before painting them.
+    */
+
+    private final SimulationSession session;
+    private final HoleStateVector holeStates;
+    private final boolean ledLit[];
+    private final int litSegments[];
+    private final int oscillationPeriod;
+
+    SimulationSnapshot(SimulationSession s, int period)
+    {
+        session = s;
+        holeStates = s.getWorkingState().copy();
+        oscillationPeriod = period;
+
+        ledLit = new boolean[s.getLEDs().length];
+        for(int i=0; i<ledLit.length; i++) ledLit[i]=s.isLEDLit(i,holeStates);
+
+        litSegments = new int[s.getDisplays().length];
+        for(int i=0; i<litSegments.length; i++) litSegments[i]=s.getLitSegments(i,holeStates);
+    }
+
+    public int getOscillationPeriod() { return oscillationPeriod; }
+    public HoleState getHoleState(int holeID) { return holeStates.get(holeID-1); }
+
+    public boolean isSameAs(SimulationSession s, int period)
+    {
+        // would a snapshot of this session show the same as this one?
+        return(s==session && period==oscillationPeriod && !s.getWorkingState().differsFrom(holeStates));
+    }
+
+    public void apply()
+    {
+        // WARNING: call from the EDT only (the components are painted there)
+        HoleStateVector boardStates = session.getBreadboard().getHoleStateVector();
+        if(holeStates.differsFrom(boardStates)) boardStates.copyFrom(holeStates);
+
+        LED leds[] = session.getLEDs();
+        for(int i=0; i<leds.length; i++)
+        {
+            if(ledLit[i])
+                leds[i].turnON();
+            else
+                leds[i].turnOFF();
+        }
+
+        SevenSegmentLED displays[] = session.getDisplays();
+        for(int i=0; i<displays.length; i++) displays[i].turnOnOffSegments(litSegments[i]);
+    }
+}
@@ -0,0 +1,317 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.util.ArrayList;
+
+class SimulationWorker implements Runnable
+{
+    /*
+            SIMULATION WORKER
+            ------------------------------------------------
+            A thread of its own which owns the simulation engine of a circuit, so that the event dispatch
+            thread (EDT) never waits for a circuit to settle. The EDT only posts requests:
+
+            reset / wireAdded / wireRemoved /       --->    edit events, held until the next requestSimulation
+            componentAdded / componentRemoved /             (a settle in progress is cancelled, to pick them up sooner)
+            memoryLoaded / setTimedMode / setRecorder
+            requestSimulation                       --->    hand over a copy of the edited component and wire lists,
+                                                            along with the edit events, and settle the circuit
+            requestClockAdvance                     --->    move the simulated time forward, stepping the clock edges on the way
+                                                            (see ClockService and SimulationEngine.advanceClocks)
+            requestRun / stopRun                    --->    run N clock cycles as fast as possible (see SimulationEngine.runCycles),
+                                                            publishing only at the end, and report the cycles per second
+            requestRewind                           --->    go back to an earlier cycle (see SimulationEngine.rewind)
+
+            The edit events are only handed over with the lists they were made to, so the engine never sees
+            an edit event before the edit. Requests which arrive while the worker is busy are coalesced:
+            the pending edit events are forwarded in order, and the pending simulated time is added up
+            and stepped edge after edge, but the circuit is only published once. After each pass, the
+            worker publishes a SimulationSnapshot through a volatile reference and calls the listener (on
+            the worker thread): the EDT takes the snapshot when it paints, and never reads the engine.
+
+            When an edit event or the engine throws, the error is reported (once), the edit events of that
+            pass are dropped, and the engine is reset: the next pass settles the circuit afresh.
+    */
+
+    private final SimulationEngine engine = new SimulationEngine();
+    private final Runnable listener;
+    private Thread thread;
+
+    // ---------- pending requests (guarded by 'this') ----------
+    private ArrayList<Runnable> pendingEdits = new ArrayList<Runnable>();
+    private ArrayList<Runnable> runningEdits = new ArrayList<Runnable>();
+    private ArrayList<CircuitComponent> pendingComponents;
+    private ArrayList<Wire> pendingWires;
+    private boolean simulationRequested;
+    private long pendingAdvance, pendingMaxLag;
+    private int pendingRunCycles, pendingStopHoleID;
+    private HoleState pendingStopState;
+    private long pendingRewind = -1;
+    private boolean shutdown;
+    // ----------------------------------------------------------
+
+    // ---------- owned by the worker thread ----------
+    private ArrayList<CircuitComponent> components;
+    private ArrayList<Wire> wires;
+    private String lastFailure;
+    private boolean failed;                     // the last pass threw: settle afresh on the next one
+    // ------------------------------------------------
+
+    private volatile boolean busy;
+    private volatile SimulationSnapshot snapshot;
+    private volatile long lastRun[];            // { cycles run, nanoseconds taken } of the last requestRun, never modified
+    private volatile long simulatedTime, droppedEdges;
+    private volatile long cycle, firstCheckpointCycle = -1;
+    private volatile long lastRewind[];         // { cycle asked for, cycle reached (-1 = no checkpoint) }, never modified
+
+    SimulationWorker(Runnable publishListener)
+    {
+        listener=publishListener;
+    }
+
+    public void start()
+    {
+        thread = new Thread(this,"Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown()
+    {
+        shutdown=true;
+        engine.stop();
+        notifyAll();
+    }
+
+    public boolean isBusy() { return busy; }
+    public SimulationSnapshot getSnapshot() { return snapshot; }
+    public long[] getLastRun() { return lastRun; }
+    public long getSimulatedTime() { return simulatedTime; }
+    public long getDroppedEdgeCount() { return droppedEdges; }
+    public long getCycle() { return cycle; }
+    public long getFirstCheckpointCycle() { return firstCheckpointCycle; }
+    public long[] getLastRewind() { return lastRewind; }
+
+    // ------------------------------------------
+    // Requests (from any thread)
+    // ------------------------------------------
+    public void reset()
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.reset(); }
+        });
+    }
+
+    public void wireAdded(final Wire w)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.wireAdded(w); }
+        });
+    }
+
+    public void wireRemoved(final Wire w)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.wireRemoved(w); }
+        });
+    }
+
+    public void componentAdded(final CircuitComponent c)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.componentAdded(c); }
+        });
+    }
+
+    public void componentRemoved(final CircuitComponent c)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.componentRemoved(c); }
+        });
+    }
+
+    public void memoryLoaded(final IC ic, final MemoryBank m)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.memoryLoaded(ic,m); }
+        });
+    }
+
+    public void setTimedMode(final boolean on)
+    {
+        post(new Runnable() {
+            @Override
+            public void run() { engine.setTimedMode(on); }
+        });
+    }
+
+    public void setRecorder(final WaveformRecorder r)
+    {
+        // r = null stops recording
+        post(new Runnable() {
+            @Override
+            public void run() { engine.setRecorder(r); }
+        });
+    }
+
+    public synchronized void requestSimulation(ArrayList<CircuitComponent> c, ArrayList<Wire> w)
+    {
+        // the lists are copied, as the EDT goes on editing its own
+        pendingComponents = new ArrayList<CircuitComponent>(c);
+        pendingWires = new ArrayList<Wire>(w);
+        simulationRequested = true;
+        busy = true;
+        notifyAll();
+    }
+
+    public synchronized void requestClockAdvance(long nanos, long maxLag)
+    {
+        // When more than maxLag nanoseconds are pending, the clocks skip whole periods to catch up
+        pendingAdvance += nanos;
+        pendingMaxLag = maxLag;
+        busy = true;
+        notifyAll();
+    }
+
+    public synchronized void requestRun(int cycles, int stopHoleID, HoleState stopState)
+    {
+        // stopHoleID = 0: run all the cycles
+        pendingRunCycles = cycles;
+        pendingStopHoleID = stopHoleID;
+        pendingStopState = stopState;
+        busy = true;
+        notifyAll();
+    }
+
+    public synchronized void requestRewind(long toCycle)
+    {
+        pendingRewind = toCycle;
+        busy = true;
+        notifyAll();
+    }
+
+    public void stopRun()
+    {
+        engine.stop();
+    }
+
+    private synchronized void post(Runnable edit)
+    {
+        pendingEdits.add(edit);
+        engine.stop();
+    }
+
+    // ------------------------------------------
+    // Worker thread
+    // ------------------------------------------
+    @Override
+    public void run()
+    {
+        while(true)
+        {
+            long advance, maxLag, rewind;
+            int runCycles, stopHoleID;
+            HoleState stopState;
+
+            synchronized(this)
+            {
+                while(!shutdown && !hasPendingRequests())
+                {
+                    try
+                    {
+                        wait();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if(shutdown) return;
+
+                // take all pending requests at once
+                if(pendingComponents!=null)
+                {
+                    ArrayList<Runnable> t = runningEdits;
+                    runningEdits = pendingEdits;
+                    pendingEdits = t;
+
+                    components = pendingComponents;
+                    wires = pendingWires;
+                    pendingComponents = null;
+                    pendingWires = null;
+                }
+
+                advance = pendingAdvance;
+                maxLag = pendingMaxLag;
+                pendingAdvance = 0;
+                runCycles = pendingRunCycles;
+                stopHoleID = pendingStopHoleID;
+                stopState = pendingStopState;
+                pendingRunCycles = 0;
+                rewind = pendingRewind;
+                pendingRewind = -1;
+                simulationRequested = false;
+            }
+
+            try
+            {
+                step(rewind,advance,maxLag,runCycles,stopHoleID,stopState);
+            } catch(RuntimeException e) {
+                // reported once, not on every request which runs into it again
+                if(!e.toString().equals(lastFailure)) Utility.alert("Simulation error: "+e);
+                lastFailure = e.toString();
+                engine.reset();
+                failed = true;
+            } finally {
+                synchronized(this)
+                {
+                    busy = hasPendingRequests();
+                }
+                listener.run();
+            }
+        }
+    }
+
+    private void step(long rewind, long advance, long maxLag, int runCycles, int stopHoleID, HoleState stopState)
+    {
+        int n = runningEdits.size();
+        try
+        {
+            for(int i=0; i<n; i++) runningEdits.get(i).run();
+        } finally {
+            runningEdits.clear();       // a batch which failed is dropped, never replayed
+        }
+
+        if(components!=null)           // nothing to simulate before the first requestSimulation
+        {
+            if((advance==0 && runCycles==0 && rewind<0) || n>0 || failed) engine.settle(components,wires);
+            failed = false;
+            if(rewind>=0) lastRewind = new long[] { rewind, engine.rewind(components,wires,rewind) };
+            if(advance>0) engine.advanceClocks(components,wires,advance,maxLag);
+            if(runCycles>0)
+            {
+                long t0 = System.nanoTime();
+                int done = engine.runCycles(components,wires,runCycles,stopHoleID,stopState);
+                lastRun = new long[] { done, System.nanoTime()-t0 };
+            }
+            snapshot = engine.takeSnapshot(snapshot);
+            simulatedTime = engine.getSimulatedTime();
+            droppedEdges = engine.getDroppedEdgeCount();
+            cycle = engine.getCycle();
+            firstCheckpointCycle = engine.getFirstCheckpointCycle();
+        }
+    }
+
+    private boolean hasPendingRequests()
+    {
+        return(simulationRequested || pendingAdvance>0 || pendingRunCycles>0 || pendingRewind>=0);
+    }
+}
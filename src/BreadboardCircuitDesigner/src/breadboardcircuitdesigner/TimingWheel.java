@@ -0,0 +1,153 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+class TimingWheel
+{
+    /*
+            TIMING WHEEL
+            ------------------------------------------------
+            The pending net changes of the timed mode (see CompiledCircuit.runTimed), in nanoseconds. A hashed
+            timing wheel: an event due at time t waits in the bucket of slot (t mod SLOTS), so scheduling and
+            taking an event are O(1), and there is no sorted queue to keep. A delay of up to SLOTS-1 ns lands
+            within one turn of the wheel; a longer one just waits in its bucket until its turn comes round.
+
+            The events of a bucket are kept in the order they were scheduled in, so when 2 events change
+            the same net at the same time, the later one wins (as when an IC is evaluated twice).
+
+            The events live in pooled arrays linked by index, with a free list: after warm-up, nothing is allocated.
+    */
+
+    private static final int SLOTS = 256;          // a power of 2
+    private static final int MASK = SLOTS-1;
+
+    private final int head[] = new int[SLOTS];     // first event of every bucket, -1 = empty
+    private final int tail[] = new int[SLOTS];
+
+    // ---------- event pool ----------
+    private long eventTime[] = new long[64];
+    private int eventNet[] = new int[64];
+    private HoleState eventState[] = new HoleState[64];
+    private int eventNext[] = new int[64];
+    private int free = -1;                          // first free event
+    private int allocated;                          // events ever taken from the pool
+    // --------------------------------
+
+    private int count;
+    private long now;
+    private HoleState polledState;
+
+    TimingWheel()
+    {
+        clear();
+    }
+
+    public long getTime() { return now; }
+    public boolean isEmpty() { return count==0; }
+    public HoleState getPolledState() { return polledState; }
+
+    public void clear()
+    {
+        for(int s=0; s<SLOTS; s++)
+        {
+            head[s]=-1;
+            tail[s]=-1;
+        }
+        free=-1;
+        allocated=0;
+        count=0;
+    }
+
+    public void schedule(int delay, int net, HoleState state)
+    {
+        // delay >= 1: an event is never due at the present time
+        int e;
+        if(free>=0)
+        {
+            e=free;
+            free=eventNext[e];
+        } else {
+            if(allocated==eventTime.length) grow();
+            e=allocated++;
+        }
+
+        long t = now+delay;
+        eventTime[e]=t;
+        eventNet[e]=net;
+        eventState[e]=state;
+        eventNext[e]=-1;
+
+        int s = (int)(t & MASK);
+        if(head[s]<0)
+            head[s]=e;
+        else
+            eventNext[tail[s]]=e;
+        tail[s]=e;
+        count++;
+    }
+
+    public boolean advance(long limit)
+    {
+        // Moves to the next time with an event due, if it is not after 'limit': false if there is none
+        for(long t=now+1; t<=limit && count>0; t++)
+        {
+            for(int e=head[(int)(t & MASK)]; e>=0; e=eventNext[e])
+            {
+                if(eventTime[e]==t)
+                {
+                    now=t;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int poll()
+    {
+        // Takes the first event due at the present time: returns its net (see getPolledState), or -1 if there is none
+        int s = (int)(now & MASK);
+        int previous = -1;
+        for(int e=head[s]; e>=0; previous=e, e=eventNext[e])
+        {
+            if(eventTime[e]!=now) continue;
+
+            // unlink, and return it to the pool
+            if(previous<0)
+                head[s]=eventNext[e];
+            else
+                eventNext[previous]=eventNext[e];
+            if(tail[s]==e) tail[s]=previous;
+
+            polledState=eventState[e];
+            eventState[e]=null;
+            eventNext[e]=free;
+            free=e;
+            count--;
+            return eventNet[e];
+        }
+        return -1;
+    }
+
+    private void grow()
+    {
+        int n = eventTime.length*2;
+
+        long t[] = new long[n];
+        int net[] = new int[n], next[] = new int[n];
+        HoleState st[] = new HoleState[n];
+
+        System.arraycopy(eventTime,0,t,0,allocated);
+        System.arraycopy(eventNet,0,net,0,allocated);
+        System.arraycopy(eventNext,0,next,0,allocated);
+        System.arraycopy(eventState,0,st,0,allocated);
+
+        eventTime=t;
+        eventNet=net;
+        eventNext=next;
+        eventState=st;
+    }
+}
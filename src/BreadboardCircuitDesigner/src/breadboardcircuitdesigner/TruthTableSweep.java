@@ -0,0 +1,104 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+class TruthTableSweep
+{
+    /*
+            TRUTH-TABLE SWEEP
+            ------------------------------------------------
+            Applies all 2^n combinations of values to n input nets of a combinational circuit.
+            Every net holds 64 input vectors at once (one per bit of a long), so a sweep takes
+            2^n / 64 levelized passes over the ICs instead of 2^n simulations.
+
+            Vector #v sets input #k to bit k of v. Within a word, the low 6 inputs follow the
+            fixed lane patterns below, and the remaining inputs are constant (bits of the word number).
+
+            Nets driven by a power supply keep their present value in all vectors.
+    */
+
+    public static final int MAX_INPUTS = 24;
+
+    private static final long LANE_PATTERNS[] = {
+        0xAAAAAAAAAAAAAAAAL,
+        0xCCCCCCCCCCCCCCCCL,
+        0xF0F0F0F0F0F0F0F0L,
+        0xFF00FF00FF00FF00L,
+        0xFFFF0000FFFF0000L,
+        0xFFFFFFFF00000000L
+    };
+
+    private int inputCount;
+    private int vectorCount;
+    private long outValue[][];              // [output][word], bit = vector within the word
+    private long outKnown[][];              // 0 = NO_CONNECTION
+
+    private TruthTableSweep() {}
+
+    public int getInputCount() { return inputCount; }
+    public int getOutputCount() { return outValue.length; }
+    public int getVectorCount() { return vectorCount; }
+    public int getWordCount() { return outValue.length==0 ? 0 : outValue[0].length; }
+    public long getValueWord(int output, int word) { return outValue[output][word]; }
+    public long getKnownWord(int output, int word) { return outKnown[output][word]; }
+
+    public HoleState getOutputState(int output, int vector)
+    {
+        long bit = 1L << (vector & 63);
+        int word = vector >>> 6;
+
+        if((outKnown[output][word] & bit)==0) return HoleState.NO_CONNECTION;
+        return((outValue[output][word] & bit)==0 ? HoleState.LOW : HoleState.HIGH);
+    }
+
+    // Factory method: 'program' must be levelized and combinational, with its power supply nets already driven
+    public static TruthTableSweep run(CompiledCircuit program, int inputNets[], int outputNets[])
+    {
+        TruthTableSweep s = new TruthTableSweep();
+        s.inputCount = inputNets.length;
+        s.vectorCount = 1 << inputNets.length;
+
+        int words = Math.max(1, s.vectorCount >>> 6);
+        s.outValue = new long[outputNets.length][words];
+        s.outKnown = new long[outputNets.length][words];
+
+        int nc = program.getNetCount();
+        long netValue[] = new long[nc], netKnown[] = new long[nc];
+
+        for(int w=0; w<words; w++)
+        {
+            // Step-1: every net starts floating, except those driven by a power supply
+            for(int n=0; n<nc; n++)
+            {
+                HoleState hs = program.getSupplyState(n);
+                netValue[n] = (hs==HoleState.HIGH ? -1L : 0L);
+                netKnown[n] = (hs==HoleState.HIGH || hs==HoleState.LOW ? -1L : 0L);
+            }
+
+            // Step-2: apply the input vectors of this word
+            for(int k=0; k<inputNets.length; k++)
+            {
+                int net = inputNets[k];
+                if(k<LANE_PATTERNS.length)
+                    netValue[net] = LANE_PATTERNS[k];
+                else
+                    netValue[net] = (((w >>> (k-LANE_PATTERNS.length)) & 1)!=0 ? -1L : 0L);
+                netKnown[net] = -1L;
+            }
+
+            // Step-3: evaluate, and record the outputs
+            program.runBitParallel(netValue,netKnown);
+
+            for(int o=0; o<outputNets.length; o++)
+            {
+                s.outValue[o][w] = netValue[outputNets[o]];
+                s.outKnown[o][w] = netKnown[outputNets[o]];
+            }
+        }
+
+        return s;
+    }
+}
@@ -5,14 +5,27 @@
 
 package breadboardcircuitdesigner;
 
+import java.awt.GraphicsEnvironment;
 import java.util.ArrayList;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 class Utility 
 {
-    public static void alert(String msg)
+    public static void alert(final String msg)
     {
-        JOptionPane.showMessageDialog(null,msg);
+        if(GraphicsEnvironment.isHeadless())
+        {
+            System.err.println(msg);        // no one to click OK (see HeadlessSimulator)
+        } else if(SwingUtilities.isEventDispatchThread()) {
+            JOptionPane.showMessageDialog(null,msg);
+        } else {
+            // e.g. from the simulation worker: Swing is only used on the EDT, and the caller does not wait
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() { JOptionPane.showMessageDialog(null,msg); }
+            });
+        }
     }
     
     public static String inputBox(String msg, String initVal)
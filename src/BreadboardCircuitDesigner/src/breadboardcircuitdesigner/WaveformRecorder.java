@@ -0,0 +1,427 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+class WaveformRecorder
+{
+    /*
+            WAVEFORM RECORDER
+            ------------------------------------------------
+            Records the states of chosen breadboard holes (probes) every time the engine settles the circuit
+            (see SimulationEngine.setRecorder), in simulated time (nanoseconds). Only the changes are kept, in
+            a bounded ring of bytes, one record per change:
+
+            <time delta><probe,state>       --->    2 variable-length integers (7 bits per byte): the time since
+                                                    the previous record, and (probe << 2 | HoleState.ordinal())
+
+            The records are indexed in blocks of BLOCK_RECORDS records, and the blocks in superblocks of
+            SUPERBLOCK_BLOCKS blocks: a block keeps where it starts (ring position, time, state of every probe)
+            and, like a superblock, the states every probe went through in it. When the ring is full, the
+            oldest block is folded into the base state (the state of every probe at the base time), so a
+            capture of millions of cycles keeps the latest part, in a fixed amount of memory, and without
+            an object per sample.
+
+            decimate        --->    the states every probe went through in each of N equal slices of a time span
+                                    (e.g. the pixel columns of LogicAnalyzerPanel): a slice covering whole blocks
+                                    or superblocks takes them from the index, so the cost depends on N rather than
+                                    on the number of records in the span
+
+            writeVCD exports the capture as a Value Change Dump, for an external waveform viewer (NO_CONNECTION
+            is written as 'z'). The recorder is filled by the simulation thread and read by the EDT: its
+            methods are synchronized.
+    */
+
+    public static final int DEFAULT_CAPACITY = 16*1024*1024;      // bytes
+    public static final int BLOCK_RECORDS = 64;
+    public static final int SUPERBLOCK_BLOCKS = 64;
+
+    private final int holeIDs[];
+    private final int probes;
+    private final byte ring[];
+    private int head, size;                     // oldest byte, and bytes in use
+
+    private final byte baseStates[];            // state of every probe at baseTime (ordinals)
+    private long baseTime;
+    private final byte lastStates[];            // state of every probe at the last sample
+    private long lastRecordTime, lastSampleTime;
+    private boolean started;
+    private long changeCount, droppedChangeCount;
+
+    // ---------- block index (circular, by block number) ----------
+    private final int maxBlocks, maxSuperblocks;
+    private final long blockBase[];             // time of the record before the first one of the block
+    private final int blockPos[];               // ring position of its first record
+    private final int blockRecords[];
+    private final byte blockStates[];           // [block*probes + probe]: state at the start of the block
+    private final byte blockMasks[];            // [block*probes + probe]: (1 << state) of every state in the block
+    private final byte superblockMasks[];       // [superblock*probes + probe]
+    private long firstBlock, openBlock;         // the oldest block, and the block being filled
+    // -------------------------------------------------------------
+
+    // ---------- decimate cursor: the states after the records read so far ----------
+    private long cursorBlock, cursorTime;
+    private int cursorPos, cursorLeft;
+    private final byte cursorStates[];
+    // -------------------------------------------------------------------------------
+
+    private final byte scratch[] = new byte[20];
+    private final long record[] = new long[2];
+
+    WaveformRecorder(int probeHoleIDs[], int capacity)
+    {
+        holeIDs = probeHoleIDs.clone();
+        probes = holeIDs.length;
+        ring = new byte[capacity];
+        baseStates = new byte[probes];
+        lastStates = new byte[probes];
+        cursorStates = new byte[probes];
+
+        // a record takes 2 bytes at least
+        maxBlocks = capacity/(2*BLOCK_RECORDS) + 3;
+        maxSuperblocks = maxBlocks/SUPERBLOCK_BLOCKS + 2;
+        blockBase = new long[maxBlocks];
+        blockPos = new int[maxBlocks];
+        blockRecords = new int[maxBlocks];
+        blockStates = new byte[maxBlocks*probes];
+        blockMasks = new byte[maxBlocks*probes];
+        superblockMasks = new byte[maxSuperblocks*probes];
+    }
+
+    public int[] getHoleIDs() { return holeIDs.clone(); }
+    public synchronized boolean isEmpty() { return !started; }
+    public synchronized long getStartTime() { return baseTime; }
+    public synchronized long getEndTime() { return lastSampleTime; }
+    public synchronized long getChangeCount() { return changeCount; }
+    public synchronized long getDroppedChangeCount() { return droppedChangeCount; }
+
+    // ------------------------------------------
+    // Recording (simulation thread)
+    // ------------------------------------------
+    public synchronized void sample(long time, HoleStateVector state)
+    {
+        if(!started)
+        {
+            for(int p=0; p<probes; p++)
+            {
+                baseStates[p] = (byte)state.get(holeIDs[p]-1).ordinal();
+                lastStates[p] = baseStates[p];
+            }
+            baseTime = time;
+            lastRecordTime = time;
+            lastSampleTime = time;
+            started = true;
+
+            firstBlock = 0;
+            openBlock = -1;
+            openBlock();
+            return;
+        }
+
+        if(time<lastSampleTime) time=lastSampleTime;        // the engine has been reset: time goes on
+        lastSampleTime = time;
+
+        for(int p=0; p<probes; p++)
+        {
+            byte s = (byte)state.get(holeIDs[p]-1).ordinal();
+            if(s==lastStates[p]) continue;
+
+            append(time-lastRecordTime, p, s);
+            lastStates[p] = s;
+            lastRecordTime = time;
+            changeCount++;
+        }
+    }
+
+    private void append(long delta, int probe, byte state)
+    {
+        if(blockRecords[index(openBlock)]==BLOCK_RECORDS) openBlock();
+
+        int n = putVarLong(scratch,0,delta);
+        n = putVarLong(scratch,n,((long)probe<<2) | state);
+        while(ring.length-size<n)
+        {
+            if(firstBlock==openBlock) openBlock();      // a ring of less than a block
+            dropOldestBlock();
+        }
+
+        for(int i=0; i<n; i++) ring[(head+size+i)%ring.length] = scratch[i];
+        size += n;
+
+        int b = index(openBlock);
+        int sb = (int)((openBlock/SUPERBLOCK_BLOCKS)%maxSuperblocks);
+        blockRecords[b]++;
+        blockMasks[b*probes+probe] |= 1<<state;
+        superblockMasks[sb*probes+probe] |= 1<<state;
+    }
+
+    private void openBlock()
+    {
+        // starts a block at the end of the ring, in the last states
+        if(openBlock+1-firstBlock==maxBlocks) dropOldestBlock();
+        openBlock++;
+
+        int b = index(openBlock);
+        int sb = (int)((openBlock/SUPERBLOCK_BLOCKS)%maxSuperblocks);
+        boolean newSuperblock = (openBlock%SUPERBLOCK_BLOCKS==0);
+
+        blockBase[b] = lastRecordTime;
+        blockPos[b] = (head+size)%ring.length;
+        blockRecords[b] = 0;
+        for(int p=0; p<probes; p++)
+        {
+            byte mask = (byte)(1<<lastStates[p]);
+            blockStates[b*probes+p] = lastStates[p];
+            blockMasks[b*probes+p] = mask;
+            if(newSuperblock)
+                superblockMasks[sb*probes+p] = mask;
+            else
+                superblockMasks[sb*probes+p] |= mask;
+        }
+    }
+
+    private void dropOldestBlock()
+    {
+        // folds the oldest block into the base state: the next block starts where it ends
+        int b = index(firstBlock), next = index(firstBlock+1);
+        int n = (blockPos[next]-blockPos[b]+ring.length)%ring.length;
+        if(n==0 && blockRecords[b]>0) n=ring.length;
+
+        head = blockPos[next];
+        size -= n;
+        baseTime = blockBase[next];
+        System.arraycopy(blockStates,next*probes,baseStates,0,probes);
+
+        droppedChangeCount += blockRecords[b];
+        firstBlock++;
+    }
+
+    private int index(long block)
+    {
+        return (int)(block%maxBlocks);
+    }
+
+    private static int putVarLong(byte b[], int pos, long v)
+    {
+        while((v & ~0x7FL)!=0)
+        {
+            b[pos++] = (byte)((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[pos++] = (byte)v;
+        return pos;
+    }
+
+    private int readRecord(int pos, long record[])
+    {
+        // Reads the record at ring position 'pos' into {delta, code}, and returns its length in bytes
+        int start = pos;
+        for(int k=0; k<2; k++)
+        {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = ring[pos];
+                pos = (pos+1)%ring.length;
+                v |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while((b & 0x80)!=0);
+            record[k] = v;
+        }
+        return((pos-start+ring.length)%ring.length);
+    }
+
+    // ------------------------------------------
+    // Decimation (any thread)
+    // ------------------------------------------
+    public synchronized void decimate(long t0, long t1, int slices, byte masks[])
+    {
+        /*
+            Fills masks[probe*slices + slice] with (1 << state) of every state the probe was in during
+            the slice [t0 + (t1-t0)*slice/slices, t0 + (t1-t0)*(slice+1)/slices). A slice before the
+            first sample or after the last one gets 0.
+
+            1.  Seek the last block which starts before t0, and read its records up to t0
+
+            2.  For every slice: start with the states at its start, then take whole superblocks and
+                blocks which end in the slice from the index, and read the other records one by one
+        */
+        java.util.Arrays.fill(masks,0,probes*slices,(byte)0);
+        if(!started || t1<=t0) return;
+
+        // Step-1
+        long start = Math.max(t0,baseTime);
+        seekBlock(findBlock(start));
+        while(nextRecordTime()<start) readNextRecord();
+
+        // Step-2
+        for(int slice=0; slice<slices; slice++)
+        {
+            long a = t0 + (long)((double)(t1-t0)*slice/slices);
+            long e = t0 + (long)((double)(t1-t0)*(slice+1)/slices);
+            if(a>lastSampleTime) break;
+            if(e<=baseTime) continue;
+
+            for(int p=0; p<probes; p++) masks[p*slices+slice] |= 1<<cursorStates[p];
+
+            while(true)
+            {
+                if(isCursorAtBlockStart())
+                {
+                    if(cursorBlock%SUPERBLOCK_BLOCKS==0 && cursorBlock+SUPERBLOCK_BLOCKS<=openBlock
+                            && blockBase[index(cursorBlock+SUPERBLOCK_BLOCKS)]<e)
+                    {
+                        int sb = (int)((cursorBlock/SUPERBLOCK_BLOCKS)%maxSuperblocks);
+                        for(int p=0; p<probes; p++) masks[p*slices+slice] |= superblockMasks[sb*probes+p];
+                        seekBlock(cursorBlock+SUPERBLOCK_BLOCKS);
+                        continue;
+                    }
+                    if(cursorBlock<openBlock && blockBase[index(cursorBlock+1)]<e)
+                    {
+                        int b = index(cursorBlock);
+                        for(int p=0; p<probes; p++) masks[p*slices+slice] |= blockMasks[b*probes+p];
+                        seekBlock(cursorBlock+1);
+                        continue;
+                    }
+                }
+
+                if(nextRecordTime()>=e) break;
+                int p = readNextRecord();
+                masks[p*slices+slice] |= 1<<cursorStates[p];
+            }
+        }
+    }
+
+    private long findBlock(long t)
+    {
+        // the last block starting before t (all the records of the blocks before it are before t), or the first block
+        long lo=firstBlock, hi=openBlock;
+        while(lo<hi)
+        {
+            long mid = (lo+hi+1)/2;
+            if(blockBase[index(mid)]<t)
+                lo=mid;
+            else
+                hi=mid-1;
+        }
+        return lo;
+    }
+
+    private void seekBlock(long block)
+    {
+        int b = index(block);
+        cursorBlock = block;
+        cursorPos = blockPos[b];
+        cursorTime = blockBase[b];
+        cursorLeft = blockRecords[b];
+        System.arraycopy(blockStates,b*probes,cursorStates,0,probes);
+    }
+
+    private boolean isCursorAtBlockStart()
+    {
+        if(cursorLeft==0 && cursorBlock<openBlock) seekBlock(cursorBlock+1);
+        return(cursorLeft==blockRecords[index(cursorBlock)]);
+    }
+
+    private long nextRecordTime()
+    {
+        // Long.MAX_VALUE after the last record
+        if(cursorLeft==0 && cursorBlock<openBlock) seekBlock(cursorBlock+1);
+        if(cursorLeft==0) return Long.MAX_VALUE;
+
+        readRecord(cursorPos,record);
+        return(cursorTime+record[0]);
+    }
+
+    private int readNextRecord()
+    {
+        // Returns the probe which changed
+        cursorPos = (cursorPos+readRecord(cursorPos,record))%ring.length;
+        cursorTime += record[0];
+        cursorLeft--;
+
+        int p = (int)(record[1]>>>2);
+        cursorStates[p] = (byte)(record[1] & 3);
+        return p;
+    }
+
+    // ------------------------------------------
+    // Export
+    // ------------------------------------------
+    public synchronized void writeVCD(Writer w) throws IOException
+    {
+        /*
+            VALUE CHANGE DUMP (IEEE 1364)
+            ----------------
+            header: date, version, timescale (1 ns), one 1-bit wire per probe (named after its hole)
+            #<base time> $dumpvars <the base state> $end
+            #<time> <the changes at that time>
+            ...
+            #<time of the last sample>
+        */
+        PrintWriter out = new PrintWriter(new BufferedWriter(w));
+        out.println("$date "+new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date())+" $end");
+        out.println("$version Breadboard Circuit Designer 1.0 $end");
+        out.println("$timescale 1ns $end");
+        out.println("$scope module breadboard $end");
+        for(int p=0; p<probes; p++) out.println("$var wire 1 "+getVCDCode(p)+" hole_"+holeIDs[p]+" $end");
+        out.println("$upscope $end");
+        out.println("$enddefinitions $end");
+
+        if(started)
+        {
+            out.println("#"+baseTime);
+            out.println("$dumpvars");
+            for(int p=0; p<probes; p++) out.println(getVCDValue(baseStates[p])+getVCDCode(p));
+            out.println("$end");
+
+            long time = baseTime;
+            long r[] = new long[2];
+            for(int pos=head, done=0; done<size; )
+            {
+                int n = readRecord(pos,r);
+                pos = (pos+n)%ring.length;
+                done += n;
+
+                if(r[0]>0)
+                {
+                    time += r[0];
+                    out.println("#"+time);
+                }
+                out.println(getVCDValue((int)(r[1] & 3))+getVCDCode((int)(r[1]>>>2)));
+            }
+            if(lastSampleTime>time) out.println("#"+lastSampleTime);
+        }
+        out.flush();
+    }
+
+    private static char getVCDValue(int ordinal)
+    {
+        switch(HoleState.values()[ordinal])
+        {
+            case HIGH: return '1';
+            case LOW: return '0';
+            default: return 'z';
+        }
+    }
+
+    private static String getVCDCode(int probe)
+    {
+        // identifiers are made of the printable characters '!' to '~', in base 94
+        StringBuilder sb = new StringBuilder();
+        do
+        {
+            sb.append((char)('!'+probe%94));
+            probe /= 94;
+        } while(probe>0);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,148 @@
+// ---------------------------------------------------------------------------------------------
+//  Copyright (c) Akash Nag. All rights reserved.
+//  Licensed under the MIT License. See LICENSE.md in the project root for license information.
+// ---------------------------------------------------------------------------------------------
+
+package breadboardcircuitdesigner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+class TickAllocationTest
+{
+    /*
+            TICK ALLOCATION TEST
+            ------------------------------------------------
+            Checks that a clock tick of the simulation worker (SimulationEngine.advanceClocks) allocates nothing
+            once the session has warmed up, with the bytes allocated by the current thread
+            (com.sun.management.ThreadMXBean). The circuit is a 7474 and a 7408 on a 100 Hz clock, and a 6116
+            RAM held in a write of 0x01 at address 0, so that every checkpoint saves its contents.
+            A snapshot is only made when the board has changed (it is handed over to the EDT, see
+            SimulationSnapshot), so takeSnapshot is checked on a quiet tick only.
+
+            ant test        (exits with 1 if the tick allocates)
+    */
+
+    private static final String CIRCUIT[] = {
+        "BCF,1.0",
+        "1253,768",
+        "7,37",
+        "BREADBOARD;Breadboard_1;[0,0];830;1052;379",
+        "POWER_SUPPLY;PowerSupply_1;[0,500];3;170;160;100.0",
+        "IC;7474_1;[414,214];0;110;58|0;540;7474",
+        "IC;7408_2;[734,214];0;110;58|0;560;7408",
+        "LED;LED_1;[750,262];0;16;100|0;751;750;-65536",
+        "RESISTOR;Resistor_1;[798,246];0;64;20|0;690;694;1000",
+        "IC;6116_1;[526,214];0;190;58|0;547;6116",
+        "-2147483393;PP;1;0;1;1",
+        "-2147483393;PP;1;0;2;51",
+        "-2147483393;PP;1;0;3;101",
+        "-2147483393;BB;0;0;4;414",
+        "-2147483393;BB;0;0;54;609",
+        "-2147483393;BB;0;0;5;603",
+        "-2147483393;BB;0;0;6;606",
+        "-2147483393;BB;0;0;102;605",
+        "-2147483393;BB;0;0;604;608",
+        "-2147483393;BB;0;0;711;623",
+        "-2147483393;BB;0;0;7;624",
+        "-2147483393;BB;0;0;8;434",
+        "-2147483393;BB;0;0;55;629",
+        "-2147483393;BB;0;0;20;421",
+        "-2147483393;BB;0;0;70;621",
+        "-2147483393;BB;0;0;71;427",
+        "-2147483393;BB;0;0;21;425",
+        "-2147483393;BB;0;0;53;424",
+        "-2147483393;BB;0;0;56;617",
+        "-2147483393;BB;0;0;57;616",
+        "-2147483393;BB;0;0;58;615",
+        "-2147483393;BB;0;0;59;614",
+        "-2147483393;BB;0;0;60;613",
+        "-2147483393;BB;0;0;61;612",
+        "-2147483393;BB;0;0;62;611",
+        "-2147483393;BB;0;0;63;610",
+        "-2147483393;BB;0;0;64;422",
+        "-2147483393;BB;0;0;65;423",
+        "-2147483393;BB;0;0;66;426",
+        "-2147483393;BB;0;0;22;618",
+        "-2147483393;BB;0;0;67;619",
+        "-2147483393;BB;0;0;68;620",
+        "-2147483393;BB;0;0;69;432",
+        "-2147483393;BB;0;0;72;431",
+        "-2147483393;BB;0;0;73;430",
+        "-2147483393;BB;0;0;74;429",
+        "-2147483393;BB;0;0;75;428"
+    };
+
+    private static final long TICK_NANOS = 1000000;         // 1 ms of simulated time
+    private static final int MEASURED_TICKS = 10000;
+
+    public static void main(String args[]) throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for(int i=0; i<CIRCUIT.length; i++) text.append(CIRCUIT[i]).append("\n");
+
+        Object obj[] = FileIO.parseCircuit(text.toString());
+        @SuppressWarnings("unchecked")
+        ArrayList<CircuitComponent> components = (ArrayList<CircuitComponent>)obj[0];
+        @SuppressWarnings("unchecked")
+        ArrayList<Wire> wires = (ArrayList<Wire>)obj[1];
+
+        for(int i=0; i<components.size(); i++)
+        {
+            if(components.get(i).getType()!=ComponentType.POWER_SUPPLY) continue;
+            PowerSupply ps = (PowerSupply)components.get(i);
+            ps.setPoweredOn(true);
+            ps.setClockOn(true);
+        }
+
+        IC ram = null;
+        for(int i=0; i<components.size(); i++)
+        {
+            if(components.get(i).getType()==ComponentType.IC && ((IC)components.get(i)).getICType()==ICType.RAM) ram = (IC)components.get(i);
+        }
+
+        SimulationEngine engine = new SimulationEngine();
+        SimulationSnapshot snapshot = null;
+        engine.simulate(components,wires);
+        // until every slot of the checkpoint ring has been filled once (see CheckpointHistory)
+        long warmUpCycles = (long)SimulationEngine.CHECKPOINT_INTERVAL*(SimulationEngine.MAX_CHECKPOINTS+2*CheckpointHistory.KEYFRAME_INTERVAL);
+        while(engine.getCycle()<warmUpCycles)
+        {
+            engine.advanceClocks(components,wires,TICK_NANOS,Long.MAX_VALUE);
+            snapshot = engine.takeSnapshot(snapshot);
+        }
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadID = Thread.currentThread().getId();
+
+        // what reading the counter costs by itself
+        long before = mx.getThreadAllocatedBytes(threadID);
+        long overhead = mx.getThreadAllocatedBytes(threadID)-before;
+
+        long cycle = engine.getCycle();
+        before = mx.getThreadAllocatedBytes(threadID);
+        for(int i=0; i<MEASURED_TICKS; i++) engine.advanceClocks(components,wires,TICK_NANOS,Long.MAX_VALUE);
+        long allocated = mx.getThreadAllocatedBytes(threadID)-before-overhead;
+        cycle = engine.getCycle()-cycle;
+        System.out.println(MEASURED_TICKS+" ticks, "+cycle+" clock edges: "+allocated+" bytes allocated");
+
+        snapshot = engine.takeSnapshot(snapshot);
+        before = mx.getThreadAllocatedBytes(threadID);
+        SimulationSnapshot quiet = engine.takeSnapshot(snapshot);
+        long snapshotAllocated = mx.getThreadAllocatedBytes(threadID)-before-overhead;
+        System.out.println("quiet snapshot: "+snapshotAllocated+" bytes allocated");
+
+        // the RAM must have been written, or its checkpoints would only fill in zeros (word 0 is the top byte of the first long)
+        long contents[] = new long[ram.getStorageLength()];
+        ram.saveStorage(contents,0);
+        boolean written = ((contents[0]>>>56)==1);
+        System.out.println("RAM written: "+written);
+
+        if(cycle==0 || allocated>0 || quiet!=snapshot || snapshotAllocated>0 || !written)
+        {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+}